@@ -0,0 +1,108 @@
+package com.github.wz2coo.localqueue.spring.benchmark;
+
+import com.github.wz2coo.localqueue.spring.core.MethodLocalQueueHandler;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.impl.SimpleProducer;
+import com.github.wz2cool.localqueue.model.config.SimpleConsumerConfig;
+import com.github.wz2cool.localqueue.model.config.SimpleProducerConfig;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch cost of the listener handler per batch, run with -prof gc to compare gc.alloc.rate.norm
+ * mvn -Pjmh test-compile exec:exec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumeLoopBenchmark {
+
+    @Param({"1", "100"})
+    private int batchSize;
+
+    private File dataDir;
+    private SimpleConsumer consumer;
+    private List<QueueMessage> messages;
+    private MethodLocalQueueHandler singleHandler;
+    private MethodLocalQueueHandler batchHandler;
+    private MethodLocalQueueHandler triggerHandler;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws Exception {
+        dataDir = Files.createTempDirectory("local-queue-benchmark").toFile();
+        SimpleProducer producer = new SimpleProducer(new SimpleProducerConfig.Builder()
+                .setDataDir(dataDir)
+                .build());
+        for (int i = 0; i < batchSize; i++) {
+            producer.offer("message-" + i);
+        }
+        producer.close();
+        consumer = new SimpleConsumer(new SimpleConsumerConfig.Builder()
+                .setDataDir(dataDir)
+                .setConsumerId("benchmark")
+                .build());
+        messages = consumer.batchTake(batchSize);
+
+        Listener listener = new Listener(blackhole);
+        singleHandler = new MethodLocalQueueHandler(listener, Listener.class.getMethod("onMessage", QueueMessage.class));
+        batchHandler = new MethodLocalQueueHandler(listener, Listener.class.getMethod("onMessages", List.class));
+        triggerHandler = new MethodLocalQueueHandler(listener, Listener.class.getMethod("onTrigger"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        consumer.close();
+        File[] files = dataDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataDir.delete();
+    }
+
+    @Benchmark
+    public void singleMessageListener() {
+        singleHandler.onMessages(messages, consumer);
+    }
+
+    @Benchmark
+    public void batchListener() {
+        batchHandler.onMessages(messages, consumer);
+    }
+
+    @Benchmark
+    public void triggerListener() {
+        triggerHandler.onMessages(messages, consumer);
+    }
+
+    public static class Listener {
+
+        private final Blackhole blackhole;
+
+        public Listener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void onMessage(QueueMessage message) {
+            blackhole.consume(message);
+        }
+
+        public void onMessages(List<QueueMessage> messages) {
+            blackhole.consume(messages);
+        }
+
+        public void onTrigger() {
+            blackhole.consume(this);
+        }
+    }
+}
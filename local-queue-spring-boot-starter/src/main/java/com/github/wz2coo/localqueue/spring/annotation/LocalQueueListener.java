@@ -1,6 +1,7 @@
 package com.github.wz2coo.localqueue.spring.annotation;
 
 import com.github.wz2coo.localqueue.spring.model.AckMode;
+import com.github.wz2coo.localqueue.spring.model.DedupMode;
 
 import java.lang.annotation.*;
 
@@ -43,13 +44,82 @@ public @interface LocalQueueListener {
      */
     long pullInterval() default 500;
 
+    /**
+     * Adaptive mode
+     * Batch size is adjusted between minBatchSize and maxBatchSize toward targetLatency,
+     * the consumer cache is drained without waiting while busy; pullInterval still bounds the idle disk poll
+     *
+     * @return true to enable adaptive mode
+     */
+    boolean adaptive() default false;
+
+    /**
+     * Minimum batch size in adaptive mode
+     *
+     * @return minimum batch size
+     */
+    int minBatchSize() default 1;
+
+    /**
+     * Target handler latency per batch in adaptive mode (milliseconds)
+     *
+     * @return target latency
+     */
+    long targetLatency() default 100;
+
     /**
      * ACK acknowledgment mode
      * AUTO: Auto acknowledgment (default)
      * MANUAL: Manual acknowledgment, requires calling Acknowledgment.acknowledge() in method
      * AUTO_SUCCESS: Auto acknowledgment only when method executes successfully
+     * With a BatchAcknowledgment parameter the mode only applies to messages neither acknowledged nor nacked,
+     * see {@link com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment}
      *
      * @return ACK acknowledgment mode
      */
     AckMode ackMode() default AckMode.AUTO;
+
+    /**
+     * Deliveries of a message failed in a BatchAcknowledgment listener before it is acknowledged and skipped
+     * 0 or less redelivers it forever
+     *
+     * @return maximum delivery attempts
+     */
+    int maxDeliveryAttempts() default 5;
+
+    /**
+     * Delay before a message failed in a BatchAcknowledgment listener is delivered again (milliseconds)
+     * The listener thread waits, so later messages are delayed as well
+     *
+     * @return redelivery backoff
+     */
+    long redeliveryBackoff() default 1000;
+
+    /**
+     * Duplicate detection mode
+     * NONE: No duplicate detection (default)
+     * MESSAGE_KEY: Skip messages whose message key was already processed
+     * POSITION: Skip messages whose queue position was already processed
+     *
+     * @return duplicate detection mode
+     */
+    DedupMode dedupMode() default DedupMode.NONE;
+
+    /**
+     * Maximum number of processed keys remembered for duplicate detection
+     *
+     * @return dedup capacity
+     */
+    int dedupCapacity() default 100000;
+
+    /**
+     * Consumer group mode
+     * Processes on the same host listening with the same customerId share the messages,
+     * each message is processed by one member, work of a dead member is taken over by the others
+     * Messages not acknowledged before the listener returns are given back to the group and delivered again;
+     * a group starts behind the position the listener reached as a single consumer
+     *
+     * @return true to enable consumer group mode
+     */
+    boolean consumerGroup() default false;
 }
\ No newline at end of file
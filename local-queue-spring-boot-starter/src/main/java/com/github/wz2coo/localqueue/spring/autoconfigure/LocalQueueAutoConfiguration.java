@@ -1,8 +1,15 @@
 package com.github.wz2coo.localqueue.spring.autoconfigure;
 
+import com.github.wz2coo.localqueue.spring.core.ChronicleQueueIndexReader;
+import com.github.wz2coo.localqueue.spring.core.ConsumerPositionRegistry;
+import com.github.wz2coo.localqueue.spring.core.FlowControlProducer;
+import com.github.wz2coo.localqueue.spring.core.ListenerLatencyRegistry;
 import com.github.wz2coo.localqueue.spring.core.ListenerRegistry;
+import com.github.wz2coo.localqueue.spring.core.LocalQueueBackfill;
 import com.github.wz2coo.localqueue.spring.core.LocalQueueListenerAnnotationBeanPostProcessor;
 import com.github.wz2coo.localqueue.spring.core.LocalQueueMessageListenerContainer;
+import com.github.wz2coo.localqueue.spring.core.QueueFileReclaimer;
+import com.github.wz2coo.localqueue.spring.core.TransactionalProducer;
 import com.github.wz2cool.localqueue.IProducer;
 import com.github.wz2cool.localqueue.impl.SimpleProducer;
 import com.github.wz2cool.localqueue.model.config.SimpleProducerConfig;
@@ -15,6 +22,7 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.util.ClassUtils;
 
 import java.io.File;
 
@@ -22,17 +30,61 @@ import java.io.File;
 @Configuration
 public class LocalQueueAutoConfiguration {
 
+    private static final String TRANSACTION_SYNCHRONIZATION_MANAGER =
+            "org.springframework.transaction.support.TransactionSynchronizationManager";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Bean(destroyMethod = "close")
-    public IProducer getProducer(LocalQueueProperties localQueueProperties) {
+    public IProducer getProducer(LocalQueueProperties localQueueProperties, ConsumerPositionRegistry positionRegistry) {
         String dataDir = localQueueProperties.getProducer().getDataDir();
         logger.info("[local-queue] init producer with data dir: {}", dataDir);
-        SimpleProducerConfig config = new SimpleProducerConfig.Builder()
+        SimpleProducerConfig.Builder builder = new SimpleProducerConfig.Builder()
                 .setDataDir(new File(dataDir))
-                .setKeepDays(localQueueProperties.getProducer().getKeepDays())
-                .build();
-        return new SimpleProducer(config);
+                .setKeepDays(localQueueProperties.getProducer().getKeepDays());
+        if (localQueueProperties.getProducer().getRollCycleType() != null) {
+            builder.setRollCycleType(localQueueProperties.getProducer().getRollCycleType());
+        }
+        IProducer producer = new SimpleProducer(builder.build());
+        if (localQueueProperties.getProducer().isTransactional()) {
+            if (!ClassUtils.isPresent(TRANSACTION_SYNCHRONIZATION_MANAGER, getClass().getClassLoader())) {
+                throw new IllegalStateException("localqueue.producer.transactional requires spring-tx on the classpath");
+            }
+            logger.info("[local-queue] enable transaction synchronized producer");
+            producer = new TransactionalProducer(producer);
+        }
+        LocalQueueProperties.FlowControl flowControl = localQueueProperties.getProducer().getFlowControl();
+        if (flowControl.isEnabled()) {
+            // outermost, so a rejected message is reported by offer instead of being dropped after commit
+            logger.info("[local-queue] enable producer flow control, maxLag: {}, mode: {}",
+                    flowControl.getMaxLag(), flowControl.getMode());
+            producer = new FlowControlProducer(producer, positionRegistry,
+                    flowControl.getMaxLag(), flowControl.getMode(), flowControl.getTimeout());
+        }
+        return producer;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ConsumerPositionRegistry consumerPositionRegistry(LocalQueueProperties properties) {
+        LocalQueueProperties.Producer producer = properties.getProducer();
+        boolean retentionLimited = producer.getMaxTotalBytes() > 0 || producer.getMaxFileCount() > 0;
+        if ((!producer.getFlowControl().isEnabled() && !retentionLimited) || producer.getDataDir() == null) {
+            return new ConsumerPositionRegistry();
+        }
+        // lag and reclamation take the positions published by consumers of any process into account
+        File dataDir = new File(producer.getDataDir());
+        return new ConsumerPositionRegistry(new ChronicleQueueIndexReader(dataDir), new File(dataDir, "positions"));
+    }
+
+    @Bean
+    public ListenerLatencyRegistry listenerLatencyRegistry() {
+        return new ListenerLatencyRegistry();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public QueueFileReclaimer queueFileReclaimer(LocalQueueProperties properties,
+            ConsumerPositionRegistry positionRegistry) {
+        return new QueueFileReclaimer(properties.getProducer(), positionRegistry);
     }
 
     @Bean
@@ -48,8 +100,15 @@ public class LocalQueueAutoConfiguration {
 
     @Bean
     public LocalQueueMessageListenerContainer localQueueMessageListenerContainer(
-            ListenerRegistry registry, LocalQueueProperties properties, ConfigurableApplicationContext context) {
-        return new LocalQueueMessageListenerContainer(registry, properties, context);
+            ListenerRegistry registry, LocalQueueProperties properties, ConfigurableApplicationContext context,
+            ConsumerPositionRegistry positionRegistry, ListenerLatencyRegistry latencyRegistry) {
+        return new LocalQueueMessageListenerContainer(registry, properties, context, positionRegistry,
+                latencyRegistry);
+    }
+
+    @Bean
+    public LocalQueueBackfill localQueueBackfill(ListenerRegistry registry, LocalQueueProperties properties) {
+        return new LocalQueueBackfill(registry, properties);
     }
 
     @Bean
@@ -59,9 +118,12 @@ public class LocalQueueAutoConfiguration {
     }
 
     @Bean
-    public ApplicationListener<ContextClosedEvent> contextClosedListener(LocalQueueMessageListenerContainer container) {
+    public ApplicationListener<ContextClosedEvent> contextClosedListener(LocalQueueMessageListenerContainer container,
+            QueueFileReclaimer reclaimer) {
         return event -> {
             logger.info("[local-queue] ContextClosedEvent received, performing cleanup...");
+            // stopping the container unregisters the consumer positions the reclaimer relies on
+            reclaimer.stop();
             container.stop();
         };
     }
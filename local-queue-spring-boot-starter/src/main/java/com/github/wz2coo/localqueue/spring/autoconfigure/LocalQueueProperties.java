@@ -1,6 +1,8 @@
 package com.github.wz2coo.localqueue.spring.autoconfigure;
 
 
+import com.github.wz2coo.localqueue.spring.model.FlowControlMode;
+import com.github.wz2cool.localqueue.model.enums.RollCycleType;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "localqueue")
@@ -25,9 +27,28 @@ public class LocalQueueProperties {
         this.consumer = consumer;
     }
 
+    /**
+     * Consumers must read with the roll cycle the producer writes with, fall back to it if not set
+     *
+     * @return consumer roll cycle type, null for the default
+     */
+    public RollCycleType resolveConsumerRollCycleType() {
+        return consumer.getRollCycleType() != null ? consumer.getRollCycleType() : producer.getRollCycleType();
+    }
+
     public static class Producer {
         private String dataDir;
         private int keepDays = -1;
+        private RollCycleType rollCycleType;
+        private long maxTotalBytes = -1;
+        private int maxFileCount = -1;
+        private long reclaimInterval = 60_000;
+        /**
+         * Delete files over the retention limits even if no consumer is registered in this process
+         */
+        private boolean reclaimWithoutConsumers = false;
+        private FlowControl flowControl = new FlowControl();
+        private boolean transactional = false;
 
         public String getDataDir() {
             return dataDir;
@@ -44,10 +65,106 @@ public class LocalQueueProperties {
         public void setKeepDays(int keepDays) {
             this.keepDays = keepDays;
         }
+
+        public RollCycleType getRollCycleType() {
+            return rollCycleType;
+        }
+
+        public void setRollCycleType(RollCycleType rollCycleType) {
+            this.rollCycleType = rollCycleType;
+        }
+
+        public long getMaxTotalBytes() {
+            return maxTotalBytes;
+        }
+
+        public void setMaxTotalBytes(long maxTotalBytes) {
+            this.maxTotalBytes = maxTotalBytes;
+        }
+
+        public int getMaxFileCount() {
+            return maxFileCount;
+        }
+
+        public void setMaxFileCount(int maxFileCount) {
+            this.maxFileCount = maxFileCount;
+        }
+
+        public long getReclaimInterval() {
+            return reclaimInterval;
+        }
+
+        public void setReclaimInterval(long reclaimInterval) {
+            this.reclaimInterval = reclaimInterval;
+        }
+
+        public boolean isReclaimWithoutConsumers() {
+            return reclaimWithoutConsumers;
+        }
+
+        public void setReclaimWithoutConsumers(boolean reclaimWithoutConsumers) {
+            this.reclaimWithoutConsumers = reclaimWithoutConsumers;
+        }
+
+        public FlowControl getFlowControl() {
+            return flowControl;
+        }
+
+        public void setFlowControl(FlowControl flowControl) {
+            this.flowControl = flowControl;
+        }
+
+        public boolean isTransactional() {
+            return transactional;
+        }
+
+        public void setTransactional(boolean transactional) {
+            this.transactional = transactional;
+        }
+    }
+
+    public static class FlowControl {
+        private boolean enabled = false;
+        private long maxLag = 100_000;
+        private FlowControlMode mode = FlowControlMode.BLOCK;
+        private long timeout = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        public void setMaxLag(long maxLag) {
+            this.maxLag = maxLag;
+        }
+
+        public FlowControlMode getMode() {
+            return mode;
+        }
+
+        public void setMode(FlowControlMode mode) {
+            this.mode = mode;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
     }
 
     public static class Consumer {
         private String dataDir;
+        private RollCycleType rollCycleType;
 
         public String getDataDir() {
             return dataDir;
@@ -56,5 +173,13 @@ public class LocalQueueProperties {
         public void setDataDir(String dataDir) {
             this.dataDir = dataDir;
         }
+
+        public RollCycleType getRollCycleType() {
+            return rollCycleType;
+        }
+
+        public void setRollCycleType(RollCycleType rollCycleType) {
+            this.rollCycleType = rollCycleType;
+        }
     }
 }
@@ -0,0 +1,23 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+
+import java.util.List;
+
+/**
+ * Callback invoked after messages have been acknowledged to the consumer
+ */
+@FunctionalInterface
+public interface AcknowledgmentListener {
+
+    /**
+     * Messages acknowledged
+     * The list is only valid during the call, the dispatch loop reuses it for the next message,
+     * implementations copy what they need to keep
+     *
+     * @param consumer consumer the messages were acknowledged to
+     * @param messages acknowledged messages, must not be retained or modified
+     */
+    void onAcknowledged(SimpleConsumer consumer, List<QueueMessage> messages);
+}
@@ -0,0 +1,61 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD controller for the batch size and poll mode of an adaptive listener
+ * Batch size grows additively while full batches finish within the target latency and
+ * halves when a batch exceeds it; an empty poll marks the listener idle until messages arrive again
+ * Not thread-safe, owned by the listener thread
+ */
+public class AdaptiveBatchController {
+
+    private static final int ADDITIVE_STEP_DIVISOR = 32;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyNanos;
+    private final int additiveStep;
+    private int batchSize;
+    private boolean idle;
+
+    public AdaptiveBatchController(int minBatchSize, int maxBatchSize, long targetLatencyMillis) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.additiveStep = Math.max(1, this.maxBatchSize / ADDITIVE_STEP_DIVISOR);
+        this.batchSize = this.minBatchSize;
+    }
+
+    /**
+     * Adjust after a poll
+     *
+     * @param requested    batch size that was requested
+     * @param received     number of messages received
+     * @param handlerNanos time spent in the handler
+     */
+    public void onBatch(int requested, int received, long handlerNanos) {
+        if (received <= 0) {
+            idle = true;
+            return;
+        }
+        idle = false;
+        if (handlerNanos > targetLatencyNanos) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+        } else if (received >= requested) {
+            // a full batch means more messages are waiting
+            batchSize = Math.min(maxBatchSize, batchSize + additiveStep);
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return true if the last poll was empty and the next one should block until messages arrive
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+}
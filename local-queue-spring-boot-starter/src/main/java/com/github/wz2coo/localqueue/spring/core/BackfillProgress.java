@@ -0,0 +1,108 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and throughput of a running backfill
+ */
+public class BackfillProgress {
+
+    private final String customerId;
+    private final int totalSplits;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicInteger completedSplits = new AtomicInteger();
+    private final AtomicInteger failedSplits = new AtomicInteger();
+    private final AtomicLong processedMessages = new AtomicLong();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile long endTime = -1;
+
+    public BackfillProgress(String customerId, int totalSplits) {
+        this.customerId = customerId;
+        this.totalSplits = totalSplits;
+    }
+
+    void addProcessedMessages(int count) {
+        processedMessages.addAndGet(count);
+    }
+
+    void splitCompleted() {
+        completedSplits.incrementAndGet();
+    }
+
+    void splitFailed() {
+        failedSplits.incrementAndGet();
+    }
+
+    void finish() {
+        endTime = System.currentTimeMillis();
+        completion.complete(null);
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public int getTotalSplits() {
+        return totalSplits;
+    }
+
+    public int getCompletedSplits() {
+        return completedSplits.get();
+    }
+
+    public int getFailedSplits() {
+        return failedSplits.get();
+    }
+
+    public long getProcessedMessages() {
+        return processedMessages.get();
+    }
+
+    public long getElapsedMillis() {
+        long end = endTime;
+        return (end < 0 ? System.currentTimeMillis() : end) - startTime;
+    }
+
+    /**
+     * @return aggregate throughput across all splits, messages per second
+     */
+    public double getThroughput() {
+        long elapsed = Math.max(1, getElapsedMillis());
+        return processedMessages.get() * 1000.0 / elapsed;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Wait for the backfill to finish
+     *
+     * @param timeout timeout
+     * @param unit    time unit
+     * @return true if finished within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            completion.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BackfillProgress{customerId='" + customerId + "', splits=" + completedSplits.get() + "/" + totalSplits
+                + ", failedSplits=" + failedSplits.get() + ", processedMessages=" + processedMessages.get()
+                + ", throughput=" + String.format("%.1f", getThroughput()) + "/s}";
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import java.util.Arrays;
+
+/**
+ * Bounded set of primitive longs, evicting the oldest entry once the capacity is reached
+ * Open addressing with linear probing, no boxing and a fixed memory footprint
+ * Not thread-safe
+ */
+public class BoundedLongSet {
+
+    private static final long EMPTY = 0L;
+
+    private final int capacity;
+    private final long[] table;
+    private final int mask;
+    private final long[] ring;
+    private int ringHead;
+    private int size;
+    private boolean containsEmpty;
+
+    public BoundedLongSet(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+        this.ring = new long[capacity];
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int index = indexOf(value);
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Add value, evicting the oldest value if the set is full
+     *
+     * @param value value
+     * @return true if the value was not present
+     */
+    public boolean add(long value) {
+        if (contains(value)) {
+            return false;
+        }
+        if (size == capacity) {
+            int oldest = (ringHead - size + capacity) % capacity;
+            removeFromTable(ring[oldest]);
+            size--;
+        }
+        if (value == EMPTY) {
+            containsEmpty = true;
+        } else {
+            int index = indexOf(value);
+            while (table[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            table[index] = value;
+        }
+        ring[ringHead] = value;
+        ringHead = (ringHead + 1) % capacity;
+        size++;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return values in insertion order, oldest first
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int start = (ringHead - size + capacity) % capacity;
+        for (int i = 0; i < size; i++) {
+            values[i] = ring[(start + i) % capacity];
+        }
+        return values;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        ringHead = 0;
+        size = 0;
+        containsEmpty = false;
+    }
+
+    private void removeFromTable(long value) {
+        if (value == EMPTY) {
+            containsEmpty = false;
+            return;
+        }
+        int index = indexOf(value);
+        while (table[index] != value) {
+            index = (index + 1) & mask;
+        }
+        // backward shift deletion keeps probe chains intact without tombstones
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (table[next] != EMPTY) {
+            int home = indexOf(table[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = EMPTY;
+    }
+
+    private int indexOf(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
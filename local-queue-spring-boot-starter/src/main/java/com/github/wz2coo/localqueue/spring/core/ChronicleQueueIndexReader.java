@@ -0,0 +1,118 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueue;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * Index reader opening the producer data dir as a read only Chronicle queue
+ * Message positions of local-queue are Chronicle indexes, so they can be counted across roll cycles
+ */
+public class ChronicleQueueIndexReader implements QueueIndexReader, Closeable {
+
+    private static final String CYCLE_FILE_SUFFIX = ".cq4";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File dataDir;
+    private SingleChronicleQueue queue;
+
+    public ChronicleQueueIndexReader(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    @Override
+    public synchronized long getLastIndex() {
+        SingleChronicleQueue openQueue = getQueue();
+        if (openQueue == null) {
+            return -1;
+        }
+        long lastIndex = openQueue.lastIndex();
+        return lastIndex < 0 ? -1 : lastIndex;
+    }
+
+    @Override
+    public synchronized long getFirstIndex() {
+        SingleChronicleQueue openQueue = getQueue();
+        if (openQueue == null) {
+            return -1;
+        }
+        // an empty queue reports Long.MAX_VALUE
+        long firstIndex = openQueue.firstIndex();
+        return firstIndex < 0 || firstIndex == Long.MAX_VALUE ? -1 : firstIndex;
+    }
+
+    @Override
+    public synchronized long countBetween(long fromIndex, long toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+        SingleChronicleQueue openQueue = getQueue();
+        if (openQueue == null) {
+            return -1;
+        }
+        try {
+            // counts [fromIndex, toIndex), the same number of messages as (fromIndex, toIndex]
+            return openQueue.countExcerpts(fromIndex, toIndex);
+        } catch (RuntimeException e) {
+            // the cycle of fromIndex may have been reclaimed or not be written yet
+            logger.debug("[local-queue] failed to count messages between {} and {}", fromIndex, toIndex, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized long toCycle(long index) {
+        SingleChronicleQueue openQueue = getQueue();
+        if (openQueue == null || index < 0) {
+            return -1;
+        }
+        return openQueue.rollCycle().toCycle(index);
+    }
+
+    /**
+     * Cycle files are named after the start of their cycle, formatted in UTC
+     */
+    @Override
+    public synchronized long getFileCycle(String fileName) {
+        SingleChronicleQueue openQueue = getQueue();
+        if (openQueue == null || !fileName.endsWith(CYCLE_FILE_SUFFIX)) {
+            return -1;
+        }
+        RollCycle rollCycle = openQueue.rollCycle();
+        SimpleDateFormat format = new SimpleDateFormat(rollCycle.format());
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        try {
+            long startMillis = format.parse(fileName.substring(0, fileName.length() - CYCLE_FILE_SUFFIX.length()))
+                    .getTime();
+            return (startMillis - openQueue.epoch()) / rollCycle.length();
+        } catch (ParseException e) {
+            logger.debug("[local-queue] not a cycle file of this queue: {}", fileName);
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+    }
+
+    private SingleChronicleQueue getQueue() {
+        if (queue == null && dataDir.isDirectory()) {
+            queue = SingleChronicleQueueBuilder.binary(dataDir).readOnly(true).build();
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,412 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coordinates the processes consuming one customerId on the same host through files in the group dir
+ * <p>
+ * members/member-N.lease: every member holds an exclusive lock on its slot file, the OS releases it
+ * when the process dies
+ * cursor: position of the last claimed message, guarded by a file lock
+ * claims/: one file per claimed position range until it is processed, ranges of dead members or
+ * failed ranges are taken over by renaming the file, so exactly one member wins
+ */
+public class ConsumerGroupCoordinator implements Closeable {
+
+    private static final int MAX_MEMBERS = 64;
+    private static final String CLAIM_SUFFIX = ".claim";
+    private static final String RECOVER_SUFFIX = ".recover";
+    private static final String RETRY_SUFFIX = ".retry";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File membersDir;
+    private final File claimsDir;
+    private final File cursorFile;
+    private RandomAccessFile leaseFile;
+    private FileLock lease;
+    private RandomAccessFile cursorAccess;
+    private int memberSlot = -1;
+
+    public ConsumerGroupCoordinator(File groupDir) {
+        this.membersDir = new File(groupDir, "members");
+        this.claimsDir = new File(groupDir, "claims");
+        this.cursorFile = new File(groupDir, "cursor");
+    }
+
+    /**
+     * Take the lowest free member slot, the slot is stable across restarts
+     *
+     * @return member slot
+     * @throws IOException if the group dir is not accessible
+     */
+    public synchronized int join() throws IOException {
+        Files.createDirectories(membersDir.toPath());
+        Files.createDirectories(claimsDir.toPath());
+        for (int slot = 0; slot < MAX_MEMBERS && memberSlot < 0; slot++) {
+            RandomAccessFile file = new RandomAccessFile(getLeaseFile(slot), "rw");
+            FileLock lock = tryLock(file.getChannel());
+            if (lock == null) {
+                file.close();
+                continue;
+            }
+            leaseFile = file;
+            lease = lock;
+            memberSlot = slot;
+            file.setLength(0);
+            file.write(ManagementFactory.getRuntimeMXBean().getName().getBytes(StandardCharsets.UTF_8));
+        }
+        if (memberSlot < 0) {
+            throw new IllegalStateException("No free member slot in " + membersDir);
+        }
+        cursorAccess = new RandomAccessFile(cursorFile, "rw");
+        // claims of a previous process in this slot look alive now, hand them to the group
+        for (File file : listClaimFiles()) {
+            if (getOwnerSlot(file.getName()) == memberSlot) {
+                moveQuietly(file, new File(claimsDir, "r-" + getFromPosition(file.getName()) + RETRY_SUFFIX));
+            }
+        }
+        logger.info("[local-queue] joined consumer group {} as member {}", membersDir.getParent(), memberSlot);
+        return memberSlot;
+    }
+
+    public int getMemberSlot() {
+        return memberSlot;
+    }
+
+    /**
+     * @return position of the last claimed message, -1 if nothing claimed yet
+     * @throws IOException if the cursor cannot be read
+     */
+    public synchronized long getCursor() throws IOException {
+        try (FileLock ignored = cursorAccess.getChannel().lock()) {
+            return readCursor();
+        }
+    }
+
+    /**
+     * Start the group behind a position processed before the group existed, only if nothing was claimed yet
+     *
+     * @param position position of the last processed message
+     * @return cursor after seeding
+     * @throws IOException if the cursor cannot be updated
+     */
+    public synchronized long seedCursor(long position) throws IOException {
+        try (FileLock ignored = cursorAccess.getChannel().lock()) {
+            long cursor = readCursor();
+            if (cursor < 0 && position >= 0) {
+                writeCursor(position);
+                return position;
+            }
+            return cursor;
+        }
+    }
+
+    /**
+     * Claim the messages no other member has claimed yet
+     *
+     * @param messages messages read by this member, in queue order
+     * @return claim, its message list is empty if everything was already claimed
+     * @throws IOException if the group files cannot be updated
+     */
+    public synchronized Claim claim(List<QueueMessage> messages) throws IOException {
+        try (FileLock ignored = cursorAccess.getChannel().lock()) {
+            long cursor = readCursor();
+            List<QueueMessage> owned = new ArrayList<>(messages.size());
+            for (QueueMessage message : messages) {
+                if (message.getPosition() > cursor) {
+                    owned.add(message);
+                }
+            }
+            if (owned.isEmpty()) {
+                return new Claim(Collections.emptyList(), -1, -1, null);
+            }
+            long from = owned.get(0).getPosition();
+            long to = owned.get(owned.size() - 1).getPosition();
+            File claimFile = new File(claimsDir, memberSlot + "-" + from + CLAIM_SUFFIX);
+            writeRange(claimFile, from, to, false);
+            writeCursor(to);
+            return new Claim(owned, from, to, claimFile);
+        }
+    }
+
+    /**
+     * Mark a claim as processed
+     *
+     * @param claim claim
+     */
+    public void complete(Claim claim) {
+        if (claim.file != null && !claim.file.delete() && claim.file.exists()) {
+            logger.warn("[local-queue] failed to delete claim file: {}", claim.file);
+        }
+    }
+
+    /**
+     * Give a failed claim back to the group, any member may process it again
+     *
+     * @param claim claim
+     */
+    public void retry(Claim claim) {
+        if (claim.file != null) {
+            moveQuietly(claim.file, new File(claimsDir, "r-" + claim.fromPosition + RETRY_SUFFIX));
+        }
+    }
+
+    /**
+     * Mark a claim as processed up to a position and give the rest back to the group
+     *
+     * @param claim        claim
+     * @param fromPosition position of the first message that was not processed
+     */
+    public void retry(Claim claim, long fromPosition) {
+        if (claim.file == null) {
+            return;
+        }
+        if (fromPosition <= claim.fromPosition) {
+            retry(claim);
+            return;
+        }
+        try {
+            writeRange(new File(claimsDir, "r-" + fromPosition + RETRY_SUFFIX),
+                    fromPosition, claim.toPosition, false);
+        } catch (IOException e) {
+            logger.error("[local-queue] failed to split claim {}-{} at {}, retry all of it",
+                    claim.fromPosition, claim.toPosition, fromPosition, e);
+            retry(claim);
+            return;
+        }
+        complete(claim);
+    }
+
+    /**
+     * Mark a claim as processed up to and including a position and give the rest back to the group,
+     * used when the position of the next message is not known
+     *
+     * @param claim             claim
+     * @param processedPosition position of the last processed message
+     */
+    public void retryAfter(Claim claim, long processedPosition) {
+        if (claim.file == null) {
+            return;
+        }
+        if (processedPosition < claim.fromPosition) {
+            retry(claim);
+            return;
+        }
+        if (processedPosition >= claim.toPosition) {
+            complete(claim);
+            return;
+        }
+        try {
+            writeRange(new File(claimsDir, "r-" + processedPosition + RETRY_SUFFIX),
+                    processedPosition, claim.toPosition, true);
+        } catch (IOException e) {
+            logger.error("[local-queue] failed to split claim {}-{} after {}, retry all of it",
+                    claim.fromPosition, claim.toPosition, processedPosition, e);
+            retry(claim);
+            return;
+        }
+        complete(claim);
+    }
+
+    /**
+     * Take over claims of dead members and claims given back for retry
+     *
+     * @return claims now owned by this member, without messages
+     */
+    public List<Claim> takeOverRecoverableClaims() {
+        List<Claim> claims = new ArrayList<>();
+        for (File file : listClaimFiles()) {
+            String name = file.getName();
+            int ownerSlot = getOwnerSlot(name);
+            if (!name.endsWith(RETRY_SUFFIX) && (ownerSlot == memberSlot || isMemberAlive(ownerSlot))) {
+                continue;
+            }
+            File recoverFile = new File(claimsDir, memberSlot + "-" + getFromPosition(name) + RECOVER_SUFFIX);
+            if (!moveQuietly(file, recoverFile)) {
+                continue;
+            }
+            try {
+                long[] range = readRange(recoverFile);
+                claims.add(new Claim(Collections.emptyList(), range[0], range[1], range[2] != 0, recoverFile));
+                logger.info("[local-queue] member {} took over claim {}", memberSlot, name);
+            } catch (IOException e) {
+                logger.error("[local-queue] failed to read claim file: {}", recoverFile, e);
+            }
+        }
+        return claims;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (cursorAccess != null) {
+                cursorAccess.close();
+            }
+            if (lease != null) {
+                lease.release();
+                leaseFile.close();
+            }
+        } catch (IOException e) {
+            logger.warn("[local-queue] failed to release consumer group lease", e);
+        } finally {
+            lease = null;
+            memberSlot = -1;
+        }
+    }
+
+    private boolean isMemberAlive(int slot) {
+        File file = getLeaseFile(slot);
+        if (!file.exists()) {
+            return false;
+        }
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileLock lock = tryLock(access.getChannel());
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private File getLeaseFile(int slot) {
+        return new File(membersDir, "member-" + slot + ".lease");
+    }
+
+    private List<File> listClaimFiles() {
+        File[] files = claimsDir.listFiles((dir, name) ->
+                name.endsWith(CLAIM_SUFFIX) || name.endsWith(RECOVER_SUFFIX) || name.endsWith(RETRY_SUFFIX));
+        List<File> result = new ArrayList<>();
+        if (files != null) {
+            Collections.addAll(result, files);
+        }
+        return result;
+    }
+
+    private long readCursor() throws IOException {
+        if (cursorAccess.length() < Long.BYTES) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        cursorAccess.getChannel().read(buffer, 0);
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeCursor(long cursor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(cursor).flip();
+        cursorAccess.getChannel().write(buffer, 0);
+    }
+
+    private static void writeRange(File file, long from, long to, boolean fromExclusive) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            out.writeLong(from);
+            out.writeLong(to);
+            out.writeBoolean(fromExclusive);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return from, to and 1 if from was already processed
+     */
+    private static long[] readRange(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long from = in.readLong();
+            long to = in.readLong();
+            // files without the flag always start at an unprocessed message
+            boolean fromExclusive = in.available() > 0 && in.readBoolean();
+            return new long[]{from, to, fromExclusive ? 1 : 0};
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // already held inside this JVM
+            return null;
+        }
+    }
+
+    private static boolean moveQuietly(File source, File target) {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            // another member won the rename
+            return false;
+        }
+    }
+
+    private static int getOwnerSlot(String claimFileName) {
+        String owner = claimFileName.substring(0, claimFileName.indexOf('-'));
+        return "r".equals(owner) ? -1 : Integer.parseInt(owner);
+    }
+
+    private static String getFromPosition(String claimFileName) {
+        return claimFileName.substring(claimFileName.indexOf('-') + 1, claimFileName.lastIndexOf('.'));
+    }
+
+    /**
+     * Position range owned by this member
+     */
+    public static class Claim {
+        private final List<QueueMessage> messages;
+        private final long fromPosition;
+        private final long toPosition;
+        private final boolean fromExclusive;
+        private final File file;
+
+        private Claim(List<QueueMessage> messages, long fromPosition, long toPosition, File file) {
+            this(messages, fromPosition, toPosition, false, file);
+        }
+
+        private Claim(List<QueueMessage> messages, long fromPosition, long toPosition, boolean fromExclusive,
+                File file) {
+            this.messages = messages;
+            this.fromPosition = fromPosition;
+            this.toPosition = toPosition;
+            this.fromExclusive = fromExclusive;
+            this.file = file;
+        }
+
+        public List<QueueMessage> getMessages() {
+            return messages;
+        }
+
+        public long getFromPosition() {
+            return fromPosition;
+        }
+
+        public long getToPosition() {
+            return toPosition;
+        }
+
+        /**
+         * @return true if the message at the from position was already processed
+         */
+        public boolean isFromExclusive() {
+            return fromExclusive;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Handler passing on only the messages claimed by this member of a consumer group
+ * Every member reads the whole queue, the coordinator decides which member processes a message
+ * A claim is completed up to the first message the listener did not acknowledge before returning,
+ * the rest is given back; claims of dead members and given back claims are processed again by a
+ * background recovery task
+ * Recovery gives a claim back from its first unprocessed message whenever it cannot finish it, a claim is only
+ * dropped unfinished once the queue files holding it were reclaimed
+ */
+public class ConsumerGroupLocalQueueHandler implements LocalQueueHandler, Closeable {
+
+    private static final long RECOVERY_IDLE_MILLIS = 3_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final LocalQueueHandler delegate;
+    private final ConsumerGroupCoordinator coordinator;
+    private final Predicate<QueueMessage> alreadyProcessed;
+    private final Supplier<SimpleConsumer> recoveryConsumerFactory;
+    private final QueueIndexReader indexReader;
+    private final int batchSize;
+    /**
+     * Listener beans are written for a single thread, recovery must not run next to the poll loop
+     */
+    private final Object dispatchLock = new Object();
+    private final ScheduledExecutorService recoveryExecutor;
+    private volatile Set<Long> acknowledgedPositions;
+
+    /**
+     * @param delegate                handler of the listener
+     * @param coordinator             coordinator of the group
+     * @param alreadyProcessed        messages the delegate skips without acknowledging, e.g. duplicates
+     * @param recoveryConsumerFactory consumer for recovered claims
+     * @param indexReader             reader of the consumed queue, tells whether a claim was reclaimed
+     * @param batchSize               batch size of recovered claims
+     * @param recoveryInterval        interval between recovery runs (milliseconds)
+     */
+    public ConsumerGroupLocalQueueHandler(LocalQueueHandler delegate, ConsumerGroupCoordinator coordinator,
+            Predicate<QueueMessage> alreadyProcessed, Supplier<SimpleConsumer> recoveryConsumerFactory,
+            QueueIndexReader indexReader, int batchSize, long recoveryInterval) {
+        this.delegate = delegate;
+        this.coordinator = coordinator;
+        this.alreadyProcessed = alreadyProcessed;
+        this.recoveryConsumerFactory = recoveryConsumerFactory;
+        this.indexReader = indexReader;
+        this.batchSize = batchSize;
+        this.recoveryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-queue-group-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.recoveryExecutor.scheduleWithFixedDelay(this::recover, recoveryInterval, recoveryInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onMessages(List<QueueMessage> messages, SimpleConsumer consumer) {
+        ConsumerGroupCoordinator.Claim claim;
+        try {
+            claim = coordinator.claim(messages);
+        } catch (IOException e) {
+            // nothing claimed, the other members still see these messages
+            throw new UncheckedIOException("failed to claim messages", e);
+        }
+        try {
+            if (!claim.getMessages().isEmpty()) {
+                dispatch(claim, claim.getMessages(), consumer);
+            }
+        } finally {
+            // the local position only tracks reading, processing is tracked by the claim files
+            consumer.ack(messages);
+        }
+    }
+
+    /**
+     * Record messages acknowledged by the listener, called by the acknowledgment listener
+     *
+     * @param messages acknowledged messages
+     */
+    public void onAcknowledged(List<QueueMessage> messages) {
+        Set<Long> positions = acknowledgedPositions;
+        if (positions != null) {
+            for (QueueMessage message : messages) {
+                positions.add(message.getPosition());
+            }
+        }
+    }
+
+    private void dispatch(ConsumerGroupCoordinator.Claim claim, List<QueueMessage> messages,
+            SimpleConsumer consumer) {
+        Set<Long> processed = Collections.synchronizedSet(new HashSet<>());
+        try {
+            dispatchTracked(messages, consumer, processed);
+        } finally {
+            int processedCount = countProcessedPrefix(messages, processed);
+            if (processedCount == messages.size()) {
+                coordinator.complete(claim);
+            } else {
+                coordinator.retry(claim, messages.get(processedCount).getPosition());
+            }
+        }
+    }
+
+    private void dispatchTracked(List<QueueMessage> messages, SimpleConsumer consumer, Set<Long> processed) {
+        for (QueueMessage message : messages) {
+            if (alreadyProcessed.test(message)) {
+                processed.add(message.getPosition());
+            }
+        }
+        synchronized (dispatchLock) {
+            acknowledgedPositions = processed;
+            try {
+                delegate.onMessages(messages, consumer);
+            } finally {
+                acknowledgedPositions = null;
+            }
+        }
+    }
+
+    private static int countProcessedPrefix(List<QueueMessage> messages, Set<Long> processed) {
+        int count = 0;
+        while (count < messages.size() && processed.contains(messages.get(count).getPosition())) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Process the claims of dead members and the claims given back, runs on the recovery thread
+     */
+    void recover() {
+        for (ConsumerGroupCoordinator.Claim claim : coordinator.takeOverRecoverableClaims()) {
+            SimpleConsumer consumer = null;
+            try {
+                consumer = recoveryConsumerFactory.get();
+                recover(claim, consumer);
+            } catch (InterruptedException e) {
+                coordinator.retry(claim);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("[local-queue] failed to recover claim {}-{}",
+                        claim.getFromPosition(), claim.getToPosition(), e);
+                coordinator.retry(claim);
+            } finally {
+                if (consumer != null) {
+                    consumer.close();
+                }
+            }
+        }
+    }
+
+    private void recover(ConsumerGroupCoordinator.Claim claim, SimpleConsumer consumer) throws InterruptedException {
+        if (!consumer.moveToPosition(claim.getFromPosition())) {
+            giveBackUnreadable(claim);
+            return;
+        }
+        // last processed position, the claim can be given back behind it
+        long processedPosition = claim.isFromExclusive() ? claim.getFromPosition() : -1;
+        long idleSince = System.currentTimeMillis();
+        while (System.currentTimeMillis() - idleSince < RECOVERY_IDLE_MILLIS) {
+            List<QueueMessage> polled = consumer.batchPoll(batchSize);
+            if (polled == null || polled.isEmpty()) {
+                TimeUnit.MILLISECONDS.sleep(10);
+                continue;
+            }
+            idleSince = System.currentTimeMillis();
+            List<QueueMessage> inRange = new ArrayList<>(polled.size());
+            boolean done = false;
+            for (QueueMessage message : polled) {
+                if (message.getPosition() > claim.getToPosition()) {
+                    done = true;
+                    break;
+                }
+                if (message.getPosition() > processedPosition && message.getPosition() >= claim.getFromPosition()) {
+                    inRange.add(message);
+                }
+            }
+            if (!inRange.isEmpty()) {
+                Set<Long> processed = Collections.synchronizedSet(new HashSet<>());
+                try {
+                    dispatchTracked(inRange, consumer, processed);
+                } catch (RuntimeException e) {
+                    logger.error("[local-queue] failed to process recovered claim {}-{}",
+                            claim.getFromPosition(), claim.getToPosition(), e);
+                }
+                int processedCount = countProcessedPrefix(inRange, processed);
+                if (processedCount < inRange.size()) {
+                    coordinator.retry(claim, inRange.get(processedCount).getPosition());
+                    return;
+                }
+                processedPosition = inRange.get(inRange.size() - 1).getPosition();
+            }
+            if (done || processedPosition >= claim.getToPosition()) {
+                coordinator.complete(claim);
+                return;
+            }
+        }
+        logger.warn("[local-queue] claim {}-{} stalled after position {}, give it back",
+                claim.getFromPosition(), claim.getToPosition(), processedPosition);
+        if (claim.isFromExclusive() || processedPosition >= claim.getFromPosition()) {
+            coordinator.retryAfter(claim, processedPosition);
+        } else {
+            coordinator.retry(claim);
+        }
+    }
+
+    /**
+     * The start of the claim cannot be read, drop it only if the queue files holding it are gone
+     */
+    private void giveBackUnreadable(ConsumerGroupCoordinator.Claim claim) {
+        long firstIndex = indexReader.getFirstIndex();
+        if (firstIndex > claim.getToPosition()) {
+            logger.warn("[local-queue] claim {}-{} was reclaimed before it was processed",
+                    claim.getFromPosition(), claim.getToPosition());
+            coordinator.complete(claim);
+        } else if (firstIndex > claim.getFromPosition()) {
+            logger.warn("[local-queue] claim {}-{} was partly reclaimed, continue from {}",
+                    claim.getFromPosition(), claim.getToPosition(), firstIndex);
+            coordinator.retry(claim, firstIndex);
+        } else {
+            logger.warn("[local-queue] failed to move to claim {}-{}, give it back",
+                    claim.getFromPosition(), claim.getToPosition());
+            coordinator.retry(claim);
+        }
+    }
+
+    @Override
+    public void close() {
+        recoveryExecutor.shutdownNow();
+        coordinator.close();
+        if (indexReader instanceof Closeable) {
+            try {
+                ((Closeable) indexReader).close();
+            } catch (IOException e) {
+                logger.warn("[local-queue] failed to close index reader", e);
+            }
+        }
+    }
+
+    public LocalQueueHandler getDelegate() {
+        return delegate;
+    }
+}
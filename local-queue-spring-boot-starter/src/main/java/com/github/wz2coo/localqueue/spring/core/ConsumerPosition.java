@@ -0,0 +1,64 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+
+import java.util.List;
+
+/**
+ * Cached acknowledged position of a single consumer
+ * Updated on every ACK so readers never have to touch the queue files
+ */
+public class ConsumerPosition {
+
+    private final String customerId;
+    private final boolean allTags;
+    private volatile long ackedPosition = -1;
+
+    public ConsumerPosition(String customerId) {
+        this(customerId, true);
+    }
+
+    public ConsumerPosition(String customerId, boolean allTags) {
+        this.customerId = customerId;
+        this.allTags = allTags;
+    }
+
+    /**
+     * Record acknowledged messages, the last message is the new position
+     *
+     * @param messages acknowledged messages
+     */
+    public void update(List<QueueMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        QueueMessage last = messages.get(messages.size() - 1);
+        this.ackedPosition = last.getPosition();
+    }
+
+    /**
+     * Forget the acknowledged position after the consumer was moved
+     * Until the next ACK the position is unknown, which blocks file reclamation
+     */
+    public void reset() {
+        this.ackedPosition = -1;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * @return true if the consumer subscribes to all tags
+     */
+    public boolean isAllTags() {
+        return allTags;
+    }
+
+    /**
+     * @return position of the last acknowledged message, -1 if nothing acknowledged yet
+     */
+    public long getAckedPosition() {
+        return ackedPosition;
+    }
+}
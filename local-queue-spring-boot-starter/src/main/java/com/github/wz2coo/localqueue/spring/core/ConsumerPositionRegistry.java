@@ -0,0 +1,347 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the cached positions of all consumers started by the listener container
+ * Consumers of other processes are seen through the position files they publish to the queue data dir
+ */
+public class ConsumerPositionRegistry implements Closeable {
+
+    private static final String POSITION_FILE_SUFFIX = ".position";
+    private static final String POSITIONS_DIR = "positions";
+    private static final long PUBLISH_INTERVAL_MILLIS = 1_000;
+    /**
+     * Position files not refreshed for this long belong to consumers that are gone
+     */
+    private static final long STALE_POSITION_MILLIS = 60_000;
+    private static final long DEFAULT_LAG_REFRESH_MILLIS = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, ConsumerPosition> positions = new ConcurrentHashMap<>();
+    private final QueueIndexReader indexReader;
+    private final File positionDir;
+    private final long lagRefreshMillis;
+    private volatile long cachedMaxLag;
+    private ScheduledExecutorService publisher;
+    private ScheduledExecutorService lagRefresher;
+
+    public ConsumerPositionRegistry() {
+        this(null, null);
+    }
+
+    /**
+     * @param indexReader reader of the producer queue, null if lag is not needed
+     * @param positionDir dir consumers of other processes publish to, null to only see local consumers
+     */
+    public ConsumerPositionRegistry(QueueIndexReader indexReader, File positionDir) {
+        this(indexReader, positionDir, DEFAULT_LAG_REFRESH_MILLIS);
+    }
+
+    ConsumerPositionRegistry(QueueIndexReader indexReader, File positionDir, long lagRefreshMillis) {
+        this.indexReader = indexReader;
+        this.positionDir = positionDir;
+        this.lagRefreshMillis = lagRefreshMillis;
+    }
+
+    public ConsumerPosition register(String customerId) {
+        return positions.computeIfAbsent(customerId, ConsumerPosition::new);
+    }
+
+    public ConsumerPosition register(String customerId, boolean allTags) {
+        return positions.computeIfAbsent(customerId, id -> new ConsumerPosition(id, allTags));
+    }
+
+    public void unregister(String customerId) {
+        positions.remove(customerId);
+    }
+
+    public ConsumerPosition getPosition(String customerId) {
+        return positions.get(customerId);
+    }
+
+    public Collection<ConsumerPosition> getPositions() {
+        return positions.values();
+    }
+
+    /**
+     * Check whether any consumer is known, registered locally or publishing to the position dir
+     *
+     * @return true if a consumer is known
+     */
+    public boolean hasConsumers() {
+        if (!positions.isEmpty()) {
+            return true;
+        }
+        File[] files = listPositionFiles();
+        return files != null && files.length > 0;
+    }
+
+    /**
+     * Get the position every known consumer has acknowledged, including consumers of other processes
+     * Published positions count regardless of their age, a stopped consumer still needs its messages
+     *
+     * @return minimum acknowledged position, -1 if no consumer is known or any consumer
+     * has not acknowledged yet
+     */
+    public long getMinAckedPosition() {
+        long min = Long.MAX_VALUE;
+        for (ConsumerPosition position : positions.values()) {
+            long ackedPosition = position.getAckedPosition();
+            if (ackedPosition < 0) {
+                return -1;
+            }
+            min = Math.min(min, ackedPosition);
+        }
+        File[] files = listPositionFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (positions.containsKey(getCustomerId(file))) {
+                    continue;
+                }
+                long publishedPosition = readPublishedPosition(file, false);
+                if (publishedPosition < 0) {
+                    return -1;
+                }
+                min = Math.min(min, publishedPosition);
+            }
+        }
+        return min == Long.MAX_VALUE ? -1 : min;
+    }
+
+    /**
+     * Get the lag of a consumer, the messages written after its acknowledged position
+     *
+     * @param customerId customer ID
+     * @return messages not yet acknowledged by the consumer, -1 if unknown
+     */
+    public long getLag(String customerId) {
+        if (indexReader == null) {
+            return -1;
+        }
+        ConsumerPosition position = positions.get(customerId);
+        if (position != null && !position.isAllTags()) {
+            return -1;
+        }
+        long ackedPosition = position == null ? readPublishedPosition(customerId) : getAckedPosition(position);
+        long lastIndex = indexReader.getLastIndex();
+        if (ackedPosition < 0 || lastIndex < 0) {
+            return -1;
+        }
+        return lagOf(ackedPosition, lastIndex);
+    }
+
+    /**
+     * Get the lag of the slowest consumer as of the last refresh, never touches the queue files
+     *
+     * @return maximum lag, 0 if no consumer is tracked or the lag was not refreshed yet
+     * @see #startLagRefresh()
+     */
+    public long getMaxLag() {
+        return cachedMaxLag;
+    }
+
+    /**
+     * Refresh the maximum lag now and then every few milliseconds in the background,
+     * so producers only read the cached value
+     */
+    public synchronized void startLagRefresh() {
+        if (lagRefresher != null || indexReader == null) {
+            return;
+        }
+        refreshMaxLag();
+        lagRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-queue-lag-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagRefresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshMaxLag();
+            } catch (Exception e) {
+                logger.warn("[local-queue] failed to refresh consumer lag", e);
+            }
+        }, lagRefreshMillis, lagRefreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recompute the lag of the slowest consumer
+     * Consumers with a selector tag only see part of the messages, consumers that have not acknowledged
+     * since they started or seeked count with their last published position, or not at all without one
+     */
+    void refreshMaxLag() {
+        if (indexReader == null) {
+            return;
+        }
+        long lastIndex = indexReader.getLastIndex();
+        long maxLag = 0;
+        for (ConsumerPosition position : positions.values()) {
+            if (position.isAllTags()) {
+                maxLag = Math.max(maxLag, lagOf(getAckedPosition(position), lastIndex));
+            }
+        }
+        File[] files = listPositionFiles();
+        if (files != null) {
+            long staleBefore = System.currentTimeMillis() - STALE_POSITION_MILLIS;
+            for (File file : files) {
+                if (!positions.containsKey(getCustomerId(file)) && file.lastModified() >= staleBefore) {
+                    maxLag = Math.max(maxLag, lagOf(readPublishedPosition(file, true), lastIndex));
+                }
+            }
+        }
+        cachedMaxLag = maxLag;
+    }
+
+    /**
+     * Periodically write the acknowledged positions of the local consumers to a dir,
+     * so producers in other processes can compute their lag and positions survive a change of consumer ID
+     *
+     * @param dir queue data dir of the consumers
+     */
+    public synchronized void startPublishing(File dir) {
+        if (publisher != null) {
+            return;
+        }
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-queue-position-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        File publishDir = new File(dir, POSITIONS_DIR);
+        publisher.scheduleWithFixedDelay(() -> publish(publishDir), 0, PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the position a consumer published last, regardless of its age and selector tag
+     * Used to carry a position over when a consumer continues under another consumer ID
+     *
+     * @param dir        queue data dir of the consumers
+     * @param customerId customer ID
+     * @return last published acknowledged position, -1 if none was published
+     */
+    public long getPublishedPosition(File dir, String customerId) {
+        return readPublishedPosition(new File(new File(dir, POSITIONS_DIR), customerId + POSITION_FILE_SUFFIX), false);
+    }
+
+    /**
+     * Delete a published position, used once a consumer continues under other consumer IDs
+     * A position file nobody refreshes anymore would otherwise keep blocking file reclamation
+     *
+     * @param dir        queue data dir of the consumers
+     * @param customerId customer ID
+     */
+    public void removePublishedPosition(File dir, String customerId) {
+        File file = new File(new File(dir, POSITIONS_DIR), customerId + POSITION_FILE_SUFFIX);
+        if (!file.delete() && file.exists()) {
+            logger.warn("[local-queue] failed to delete position file: {}", file);
+        }
+    }
+
+    public synchronized void stopPublishing() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+    }
+
+    /**
+     * Write the acknowledged positions of the local consumers once
+     *
+     * @param publishDir dir of the position files
+     */
+    void publish(File publishDir) {
+        try {
+            Files.createDirectories(publishDir.toPath());
+            for (ConsumerPosition position : positions.values()) {
+                // unknown positions are not published, the consumer does not count until it acknowledges
+                if (position.getAckedPosition() < 0) {
+                    continue;
+                }
+                File file = new File(publishDir, position.getCustomerId() + POSITION_FILE_SUFFIX);
+                File tempFile = new File(publishDir, file.getName() + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+                    out.writeLong(position.getAckedPosition());
+                    out.writeBoolean(position.isAllTags());
+                }
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            logger.warn("[local-queue] failed to publish consumer positions to {}", publishDir, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopPublishing();
+        synchronized (this) {
+            if (lagRefresher != null) {
+                lagRefresher.shutdownNow();
+                lagRefresher = null;
+            }
+        }
+        if (indexReader instanceof Closeable) {
+            ((Closeable) indexReader).close();
+        }
+    }
+
+    private long lagOf(long ackedPosition, long lastIndex) {
+        if (ackedPosition < 0 || lastIndex < 0) {
+            return 0;
+        }
+        // the cached last index may be older than the latest acknowledgment
+        return Math.max(0, indexReader.countBetween(ackedPosition, lastIndex));
+    }
+
+    private File[] listPositionFiles() {
+        return positionDir == null ? null : positionDir.listFiles((dir, name) -> name.endsWith(POSITION_FILE_SUFFIX));
+    }
+
+    /**
+     * @return the cached acknowledged position, the published one while nothing was acknowledged
+     * since the consumer started or seeked
+     */
+    private long getAckedPosition(ConsumerPosition position) {
+        long ackedPosition = position.getAckedPosition();
+        return ackedPosition < 0 ? readPublishedPosition(position.getCustomerId()) : ackedPosition;
+    }
+
+    private long readPublishedPosition(String customerId) {
+        return positionDir == null
+                ? -1 : readPublishedPosition(new File(positionDir, customerId + POSITION_FILE_SUFFIX), true);
+    }
+
+    private static String getCustomerId(File positionFile) {
+        String name = positionFile.getName();
+        return name.substring(0, name.length() - POSITION_FILE_SUFFIX.length());
+    }
+
+    /**
+     * @param allTagsOnly true to ignore consumers with a selector tag, they only see part of the messages
+     */
+    private static long readPublishedPosition(File file, boolean allTagsOnly) {
+        if (!file.isFile()) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long position = in.readLong();
+            // files without the flag were only written for consumers of all tags
+            boolean allTags = in.available() <= 0 || in.readBoolean();
+            return allTagsOnly && !allTags ? -1 : position;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handler skipping messages that were already processed before redelivery
+ * Processed keys are recorded by the acknowledgment listener, so only acknowledged messages count as processed
+ */
+public class DeduplicatingLocalQueueHandler implements LocalQueueHandler {
+
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 5_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final LocalQueueHandler delegate;
+    private final MessageDeduplicator deduplicator;
+    private final AcknowledgmentListener acknowledgmentListener;
+    private long lastSnapshotTime = System.currentTimeMillis();
+
+    public DeduplicatingLocalQueueHandler(LocalQueueHandler delegate, MessageDeduplicator deduplicator,
+            AcknowledgmentListener acknowledgmentListener) {
+        this.delegate = delegate;
+        this.deduplicator = deduplicator;
+        this.acknowledgmentListener = acknowledgmentListener;
+    }
+
+    @Override
+    public void onMessages(List<QueueMessage> messages, SimpleConsumer consumer) {
+        List<QueueMessage> freshMessages = new ArrayList<>(messages.size());
+        for (QueueMessage message : messages) {
+            if (!deduplicator.isDuplicate(message)) {
+                freshMessages.add(message);
+            }
+        }
+        int duplicates = messages.size() - freshMessages.size();
+        if (duplicates > 0 && logger.isDebugEnabled()) {
+            logger.debug("[local-queue] skip {} duplicate messages", duplicates);
+        }
+        if (freshMessages.isEmpty()) {
+            // already processed, only the position needs to move
+            new DefaultAcknowledgment(consumer, messages, acknowledgmentListener).acknowledge();
+            return;
+        }
+
+        delegate.onMessages(freshMessages, consumer);
+        long now = System.currentTimeMillis();
+        if (now - lastSnapshotTime >= SNAPSHOT_INTERVAL_MILLIS) {
+            lastSnapshotTime = now;
+            deduplicator.saveSnapshot();
+        }
+    }
+
+    public LocalQueueHandler getDelegate() {
+        return delegate;
+    }
+
+    public MessageDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+}
@@ -18,13 +18,20 @@ public class DefaultAcknowledgment implements Acknowledgment {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private final SimpleConsumer consumer;
-    private final List<QueueMessage> messages;
+    private SimpleConsumer consumer;
+    private List<QueueMessage> messages;
+    private AcknowledgmentListener listener;
     private final AtomicBoolean acknowledged = new AtomicBoolean(false);
 
     public DefaultAcknowledgment(SimpleConsumer consumer, List<QueueMessage> messages) {
+        this(consumer, messages, null);
+    }
+
+    public DefaultAcknowledgment(SimpleConsumer consumer, List<QueueMessage> messages,
+            AcknowledgmentListener listener) {
         this.consumer = consumer;
         this.messages = messages;
+        this.listener = listener;
     }
 
     @Override
@@ -32,6 +39,9 @@ public class DefaultAcknowledgment implements Acknowledgment {
         if (acknowledged.compareAndSet(false, true)) {
             try {
                 consumer.ack(messages);
+                if (listener != null) {
+                    listener.onAcknowledged(consumer, messages);
+                }
                 if (logger.isDebugEnabled()) {
                     logger.debug("[local-queue] Acknowledged {} messages", messages.size());
                 }
@@ -46,6 +56,22 @@ public class DefaultAcknowledgment implements Acknowledgment {
     }
 
 
+    /**
+     * Reuse this instance for another batch, only safe while it is not exposed to listener code
+     *
+     * @param consumer consumer instance
+     * @param messages message list
+     * @param listener acknowledgment listener
+     * @return this instance
+     */
+    DefaultAcknowledgment reset(SimpleConsumer consumer, List<QueueMessage> messages, AcknowledgmentListener listener) {
+        this.consumer = consumer;
+        this.messages = messages;
+        this.listener = listener;
+        this.acknowledged.set(false);
+        return this;
+    }
+
     /**
      * Check if already acknowledged
      *
@@ -0,0 +1,128 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Default per-message batch acknowledgment implementation
+ * Records the outcome of every message, {@link #commit()} acknowledges the contiguous success prefix
+ */
+public class DefaultBatchAcknowledgment implements BatchAcknowledgment {
+
+    private static final byte PENDING = 0;
+    private static final byte ACKED = 1;
+    private static final byte NACKED = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final SimpleConsumer consumer;
+    private final List<QueueMessage> messages;
+    private final AcknowledgmentListener listener;
+    private final byte[] states;
+    private boolean committed;
+
+    public DefaultBatchAcknowledgment(SimpleConsumer consumer, List<QueueMessage> messages,
+            AcknowledgmentListener listener) {
+        this.consumer = consumer;
+        this.messages = messages;
+        this.listener = listener;
+        this.states = new byte[messages.size()];
+    }
+
+    @Override
+    public synchronized void acknowledge() {
+        for (int i = 0; i < states.length; i++) {
+            setState(i, ACKED);
+        }
+    }
+
+    @Override
+    public synchronized void acknowledge(int index) {
+        setState(index, ACKED);
+    }
+
+    @Override
+    public synchronized void nack(int index) {
+        setState(index, NACKED);
+    }
+
+    @Override
+    public synchronized void nackFrom(int index) {
+        checkIndex(index);
+        for (int i = index; i < states.length; i++) {
+            setState(i, NACKED);
+        }
+    }
+
+    /**
+     * Acknowledge every message neither acknowledged nor nacked, used by the automatic ACK modes
+     */
+    public synchronized void acknowledgePending() {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == PENDING) {
+                setState(i, ACKED);
+            }
+        }
+    }
+
+    /**
+     * @return index of the first message that is not acknowledged, message count if all are
+     */
+    public synchronized int getFirstUnacknowledged() {
+        int index = 0;
+        while (index < states.length && states[index] == ACKED) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Acknowledge the contiguous prefix of acknowledged messages to the consumer
+     *
+     * @return index of the first message that was not acknowledged, message count if all were
+     */
+    public synchronized int commit() {
+        int prefix = getFirstUnacknowledged();
+        committed = true;
+        if (prefix > 0) {
+            List<QueueMessage> acknowledgedMessages = messages.subList(0, prefix);
+            consumer.ack(acknowledgedMessages);
+            if (listener != null) {
+                listener.onAcknowledged(consumer, acknowledgedMessages);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("[local-queue] Acknowledged {} of {} messages", prefix, states.length);
+            }
+        }
+        return prefix;
+    }
+
+    public synchronized boolean isAcknowledged(int index) {
+        checkIndex(index);
+        return states[index] == ACKED;
+    }
+
+    public synchronized boolean isCommitted() {
+        return committed;
+    }
+
+    private void setState(int index, byte state) {
+        checkIndex(index);
+        if (committed) {
+            logger.warn("[local-queue] Batch already committed, ignore state change of message {}", index);
+            return;
+        }
+        states[index] = state;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= states.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", batch size: " + states.length);
+        }
+    }
+}
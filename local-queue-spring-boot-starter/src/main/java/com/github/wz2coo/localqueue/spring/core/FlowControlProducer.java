@@ -0,0 +1,104 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.model.FlowControlMode;
+import com.github.wz2cool.localqueue.IProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer applying backpressure when the slowest consumer falls too far behind
+ * Lag is the distance from the queue tail to the cached acknowledged positions of {@link ConsumerPositionRegistry},
+ * it is refreshed every few milliseconds in the background, so the threshold is a soft limit
+ */
+public class FlowControlProducer implements IProducer {
+
+    private static final long CHECK_INTERVAL_MILLIS = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IProducer delegate;
+    private final ConsumerPositionRegistry positionRegistry;
+    private final long maxLag;
+    private final FlowControlMode mode;
+    private final long timeout;
+
+    public FlowControlProducer(IProducer delegate, ConsumerPositionRegistry positionRegistry,
+            long maxLag, FlowControlMode mode, long timeout) {
+        this.delegate = delegate;
+        this.positionRegistry = positionRegistry;
+        this.maxLag = maxLag;
+        this.mode = mode;
+        this.timeout = timeout;
+        positionRegistry.startLagRefresh();
+    }
+
+    @Override
+    public boolean offer(String message) {
+        return awaitCapacity() && delegate.offer(message);
+    }
+
+    @Override
+    public boolean offer(String messageKey, String message) {
+        return awaitCapacity() && delegate.offer(messageKey, message);
+    }
+
+    @Override
+    public boolean offer(String tag, String messageKey, String message) {
+        return awaitCapacity() && delegate.offer(tag, messageKey, message);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Get the lag of the slowest consumer, callers can use it to shed load early
+     *
+     * @return current lag
+     */
+    public long getLag() {
+        return positionRegistry.getMaxLag();
+    }
+
+    /**
+     * @return true if the lag threshold is exceeded and offers will be throttled
+     */
+    public boolean isLagExceeded() {
+        return getLag() >= maxLag;
+    }
+
+    private boolean awaitCapacity() {
+        if (!isLagExceeded()) {
+            return true;
+        }
+        if (mode == FlowControlMode.REJECT) {
+            logger.debug("[local-queue] message rejected, consumer lag: {}", getLag());
+            return false;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while (isLagExceeded()) {
+                if (delegate.isClosed()) {
+                    return false;
+                }
+                if (mode == FlowControlMode.TIMEOUT && System.nanoTime() - deadline >= 0) {
+                    logger.debug("[local-queue] message rejected after {} ms, consumer lag: {}", timeout, getLag());
+                    return false;
+                }
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
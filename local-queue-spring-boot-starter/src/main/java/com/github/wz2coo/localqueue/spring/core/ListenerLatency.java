@@ -0,0 +1,60 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latencies of one listener, all values in microseconds
+ * Queue latency: message write time to dispatch, covers queueing and pull interval
+ * Handle latency: dispatch to acknowledgment, covers handler time
+ */
+public class ListenerLatency {
+
+    private final String customerId;
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram handleLatency = new LatencyHistogram();
+    private volatile long dispatchNanos;
+
+    public ListenerLatency(String customerId) {
+        this.customerId = customerId;
+    }
+
+    /**
+     * Record messages about to be dispatched to the handler
+     *
+     * @param messages dispatched messages
+     */
+    public void recordDispatch(List<QueueMessage> messages) {
+        long now = System.currentTimeMillis();
+        for (QueueMessage message : messages) {
+            queueLatency.recordValue(TimeUnit.MILLISECONDS.toMicros(now - message.getWriteTime()));
+        }
+        dispatchNanos = System.nanoTime();
+    }
+
+    /**
+     * Record acknowledged messages, measured from the last dispatch
+     *
+     * @param messages acknowledged messages
+     */
+    public void recordAcknowledged(List<QueueMessage> messages) {
+        long elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dispatchNanos);
+        for (int i = 0; i < messages.size(); i++) {
+            handleLatency.recordValue(elapsed);
+        }
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyHistogram getHandleLatency() {
+        return handleLatency;
+    }
+}
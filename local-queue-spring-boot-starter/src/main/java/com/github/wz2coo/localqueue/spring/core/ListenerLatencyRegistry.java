@@ -0,0 +1,25 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the latency histograms of all listeners, read it to export metrics
+ */
+public class ListenerLatencyRegistry {
+
+    private final Map<String, ListenerLatency> latencies = new ConcurrentHashMap<>();
+
+    public ListenerLatency register(String customerId) {
+        return latencies.computeIfAbsent(customerId, ListenerLatency::new);
+    }
+
+    public ListenerLatency getLatency(String customerId) {
+        return latencies.get(customerId);
+    }
+
+    public Collection<ListenerLatency> getLatencies() {
+        return latencies.values();
+    }
+}
@@ -10,7 +10,20 @@ public class ListenerRegistry {
     private final Map<String, LocalQueueHandler> customerHandlers = new ConcurrentHashMap<>();
 
 
-    public void register(String customerId, LocalQueueListener annotation, LocalQueueHandler handler) {
+    /**
+     * Register a listener
+     *
+     * @param customerId customer ID, must be unique
+     * @param annotation listener annotation
+     * @param handler    listener handler
+     * @throws IllegalStateException if the customer ID is already registered
+     */
+    public synchronized void register(String customerId, LocalQueueListener annotation, LocalQueueHandler handler) {
+        LocalQueueHandler existing = customerHandlers.get(customerId);
+        if (existing != null) {
+            throw new IllegalStateException("Duplicate @LocalQueueListener customerId: " + customerId
+                    + ", already registered by " + describe(existing) + ", rejected " + describe(handler));
+        }
         customerAnnotations.put(customerId, annotation);
         customerHandlers.put(customerId, handler);
     }
@@ -26,4 +39,11 @@ public class ListenerRegistry {
     public LocalQueueHandler getCustomerHandler(String customerId) {
         return customerHandlers.get(customerId);
     }
+
+    private static String describe(LocalQueueHandler handler) {
+        if (handler instanceof MethodLocalQueueHandler) {
+            return ((MethodLocalQueueHandler) handler).getMethod().toGenericString();
+        }
+        return handler.getClass().getName();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Applies seek requests on the listener thread between batches
+ * A seek never runs while a batch is handled, so acknowledgments of that batch cannot overwrite the new position,
+ * a batch taken while the seek was requested is dropped unacknowledged and read again from the new position
+ */
+class ListenerSeekControl {
+
+    private final Deque<SeekRequest> pending = new ArrayDeque<>();
+    private Thread listenerThread;
+    private boolean waiting;
+    private boolean closed;
+    private long skipThroughPosition = -1;
+
+    /**
+     * @param thread thread running the poll loop
+     */
+    synchronized void bind(Thread thread) {
+        this.listenerThread = thread;
+    }
+
+    /**
+     * Request a seek and wait until the listener thread applied it
+     * Called from the listener thread itself, the seek is applied after the current batch and true is returned
+     *
+     * @param action moves the consumer, returns true if moved
+     * @return result of the action
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean seek(BooleanSupplier action) throws InterruptedException {
+        SeekRequest request = new SeekRequest(action);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Listener is stopped");
+            }
+            pending.add(request);
+            if (Thread.currentThread() == listenerThread) {
+                return true;
+            }
+            if (waiting) {
+                // wake the loop up, it is blocked waiting for messages
+                listenerThread.interrupt();
+            }
+        }
+        return request.await();
+    }
+
+    /**
+     * Skip messages up to and including a position, used when the consumer is moved onto the last message
+     * Every later seek drops the skip again
+     *
+     * @param position last position to skip
+     */
+    synchronized void skipThrough(long position) {
+        this.skipThroughPosition = position;
+    }
+
+    /**
+     * Called by the listener thread before it waits for messages
+     */
+    synchronized void beforeWait() {
+        applyPending();
+        waiting = true;
+    }
+
+    /**
+     * Called by the listener thread with the messages it got
+     *
+     * @param messages messages taken from the consumer
+     * @param consumer consumer
+     * @return messages to handle
+     */
+    synchronized List<QueueMessage> afterWait(List<QueueMessage> messages, SimpleConsumer consumer) {
+        waiting = false;
+        if (!pending.isEmpty()) {
+            // read from the old position, the seek already interrupted this thread
+            Thread.interrupted();
+            applyPending();
+            return Collections.emptyList();
+        }
+        if (messages == null || messages.isEmpty() || skipThroughPosition < 0) {
+            return messages == null ? Collections.emptyList() : messages;
+        }
+        List<QueueMessage> skipped = new ArrayList<>();
+        List<QueueMessage> remaining = new ArrayList<>(messages.size());
+        for (QueueMessage message : messages) {
+            if (message.getPosition() <= skipThroughPosition) {
+                skipped.add(message);
+            } else {
+                remaining.add(message);
+            }
+            if (message.getPosition() >= skipThroughPosition) {
+                skipThroughPosition = -1;
+            }
+        }
+        if (!skipped.isEmpty()) {
+            consumer.ack(skipped);
+        }
+        return remaining;
+    }
+
+    /**
+     * Called by the listener thread when it was interrupted while waiting
+     *
+     * @return true if a seek caused the interrupt and the loop should go on
+     */
+    synchronized boolean onInterrupted() {
+        waiting = false;
+        if (pending.isEmpty()) {
+            return false;
+        }
+        applyPending();
+        return true;
+    }
+
+    /**
+     * Fail all pending and future seek requests
+     */
+    synchronized void close() {
+        closed = true;
+        for (SeekRequest request : pending) {
+            request.result.completeExceptionally(new IllegalStateException("Listener is stopped"));
+        }
+        pending.clear();
+    }
+
+    private void applyPending() {
+        SeekRequest request;
+        while ((request = pending.poll()) != null) {
+            // the skip belongs to the previous seek, the request sets its own if needed
+            skipThroughPosition = -1;
+            try {
+                request.result.complete(request.action.getAsBoolean());
+            } catch (RuntimeException e) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class SeekRequest {
+        private final BooleanSupplier action;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private SeekRequest(BooleanSupplier action) {
+            this.action = action;
+        }
+
+        private boolean await() throws InterruptedException {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.autoconfigure.LocalQueueProperties;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.config.SimpleConsumerConfig;
+import com.github.wz2cool.localqueue.model.enums.RollCycleType;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * One-shot parallel reprocessing of historical messages through a listener's handler
+ * The range is split by roll cycle and every split is read by its own temporary consumer,
+ * the live consumer position is never touched
+ * Only suitable for handlers that are thread-safe and insensitive to message order
+ * Listener methods are invoked through a handler of their own, so acknowledgments of the backfill consumers
+ * never reach the deduplication, redelivery or consumer group state of the live listener
+ * A split only completes when it reached its end or the queue tail seen when the backfill started
+ */
+public class LocalQueueBackfill {
+
+    private static final int BATCH_SIZE = 500;
+    private static final long PULL_INTERVAL_MILLIS = 10;
+    /**
+     * The read cache of a new consumer may stay empty for a while after it was moved
+     */
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ListenerRegistry registry;
+    private final LocalQueueProperties properties;
+    private final Function<String, SimpleConsumer> consumerFactory;
+    private final LongSupplier tailIndexReader;
+    private final long idleTimeoutMillis;
+    private final Set<String> runningCustomerIds = ConcurrentHashMap.newKeySet();
+
+    public LocalQueueBackfill(ListenerRegistry registry, LocalQueueProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+        this.consumerFactory = this::createConsumer;
+        this.tailIndexReader = this::readTailIndex;
+        this.idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    }
+
+    LocalQueueBackfill(ListenerRegistry registry, LocalQueueProperties properties,
+            Function<String, SimpleConsumer> consumerFactory, LongSupplier tailIndexReader, long idleTimeoutMillis) {
+        this.registry = registry;
+        this.properties = properties;
+        this.consumerFactory = consumerFactory;
+        this.tailIndexReader = tailIndexReader;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Reprocess messages written in [fromTimestamp, toTimestamp), one split per roll cycle
+     *
+     * @param customerId    customer ID of the listener whose handler processes the messages
+     * @param fromTimestamp inclusive start, epoch milliseconds
+     * @param toTimestamp   exclusive end, epoch milliseconds
+     * @param parallelism   number of splits processed concurrently
+     * @return progress of the backfill
+     */
+    public BackfillProgress backfillByTime(String customerId, long fromTimestamp, long toTimestamp, int parallelism) {
+        if (fromTimestamp >= toTimestamp) {
+            throw new IllegalArgumentException("fromTimestamp must be before toTimestamp");
+        }
+        long cycleMillis = getCycleMillis(properties.resolveConsumerRollCycleType());
+        List<BackfillSplit> splits = new ArrayList<>();
+        for (long cycleStart = fromTimestamp - Math.floorMod(fromTimestamp, cycleMillis);
+             cycleStart < toTimestamp; cycleStart += cycleMillis) {
+            long start = Math.max(fromTimestamp, cycleStart);
+            long end = Math.min(toTimestamp, cycleStart + cycleMillis);
+            splits.add(new BackfillSplit("timestamp " + start, consumer -> consumer.moveToTimestamp(start),
+                    message -> message.getWriteTime() >= end, message -> message.getWriteTime() >= start));
+        }
+        return run(customerId, splits, parallelism);
+    }
+
+    /**
+     * Reprocess messages in [fromPosition, toPosition]
+     * Positions do not reveal roll cycle boundaries, so the range is read as a single split
+     *
+     * @param customerId   customer ID of the listener whose handler processes the messages
+     * @param fromPosition inclusive start position
+     * @param toPosition   inclusive end position
+     * @return progress of the backfill
+     */
+    public BackfillProgress backfillByPosition(String customerId, long fromPosition, long toPosition) {
+        if (fromPosition > toPosition) {
+            throw new IllegalArgumentException("fromPosition must not be after toPosition");
+        }
+        List<BackfillSplit> splits = new ArrayList<>();
+        splits.add(new BackfillSplit("position " + fromPosition, consumer -> consumer.moveToPosition(fromPosition),
+                message -> message.getPosition() > toPosition, message -> message.getPosition() >= fromPosition));
+        return run(customerId, splits, 1);
+    }
+
+    private BackfillProgress run(String customerId, List<BackfillSplit> splits, int parallelism) {
+        LocalQueueHandler handler = registry.getCustomerHandler(customerId);
+        LocalQueueListener annotation = registry.getCustomerAnnotation(customerId);
+        if (handler == null || annotation == null) {
+            throw new IllegalArgumentException("No listener registered for customerId: " + customerId);
+        }
+        // backfill consumer ids are reused, two backfills of one listener would share them
+        if (!runningCustomerIds.add(customerId)) {
+            throw new IllegalStateException("Backfill already running for customerId: " + customerId);
+        }
+        LocalQueueHandler backfillHandler = handler instanceof MethodLocalQueueHandler
+                ? new MethodLocalQueueHandler(((MethodLocalQueueHandler) handler).getBean(),
+                ((MethodLocalQueueHandler) handler).getMethod(), annotation)
+                : handler;
+        BackfillProgress progress = new BackfillProgress(customerId, splits.size());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, splits.size())));
+        BlockingQueue<String> consumerIds = new ArrayBlockingQueue<>(pool.getParallelism());
+        for (int i = 0; i < pool.getParallelism(); i++) {
+            consumerIds.add(customerId + "-backfill-" + i);
+        }
+        long tailIndex;
+        try {
+            tailIndex = tailIndexReader.getAsLong();
+        } catch (RuntimeException e) {
+            runningCustomerIds.remove(customerId);
+            pool.shutdown();
+            throw e;
+        }
+        logger.info("[local-queue] start backfill for customerId: {}, splits: {}, parallelism: {}, tail: {}",
+                customerId, splits.size(), pool.getParallelism(), tailIndex);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(splits.size());
+        for (BackfillSplit split : splits) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> runSplit(annotation, backfillHandler, split, tailIndex, consumerIds, progress), pool));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((result, e) -> {
+            pool.shutdown();
+            runningCustomerIds.remove(customerId);
+            progress.finish();
+            logger.info("[local-queue] finish backfill: {}", progress);
+        });
+        return progress;
+    }
+
+    private void runSplit(LocalQueueListener annotation, LocalQueueHandler handler, BackfillSplit split,
+            long tailIndex, BlockingQueue<String> consumerIds, BackfillProgress progress) {
+        if (tailIndex < 0) {
+            // empty queue
+            progress.splitCompleted();
+            return;
+        }
+        String consumerId;
+        try {
+            consumerId = consumerIds.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.splitFailed();
+            return;
+        }
+        SimpleConsumer consumer = null;
+        try {
+            consumer = consumerFactory.apply(consumerId);
+            if (!split.seek.test(consumer)) {
+                // nothing written at or after the start of the split
+                progress.splitCompleted();
+                return;
+            }
+            readSplit(annotation, handler, split, tailIndex, consumer, progress);
+            progress.splitCompleted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.splitFailed();
+        } catch (Exception e) {
+            logger.error("[local-queue] backfill split {} failed for customerId: {}",
+                    split.name, annotation.customerId(), e);
+            progress.splitFailed();
+        } finally {
+            if (consumer != null) {
+                consumer.close();
+            }
+            consumerIds.add(consumerId);
+        }
+    }
+
+    private void readSplit(LocalQueueListener annotation, LocalQueueHandler handler, BackfillSplit split,
+            long tailIndex, SimpleConsumer consumer, BackfillProgress progress) throws InterruptedException {
+        String selectorTag = annotation.selectorTag();
+        long idleSince = System.currentTimeMillis();
+        boolean reachedEnd = false;
+        while (!reachedEnd) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            List<QueueMessage> messages = consumer.batchPoll(BATCH_SIZE);
+            if (messages == null || messages.isEmpty()) {
+                if (System.currentTimeMillis() - idleSince >= idleTimeoutMillis) {
+                    throw new IllegalStateException("No message for " + idleTimeoutMillis
+                            + " ms before the end of split " + split.name);
+                }
+                TimeUnit.MILLISECONDS.sleep(PULL_INTERVAL_MILLIS);
+                continue;
+            }
+            idleSince = System.currentTimeMillis();
+            List<QueueMessage> inRange = new ArrayList<>(messages.size());
+            for (QueueMessage message : messages) {
+                if (split.isAfterEnd.test(message)) {
+                    reachedEnd = true;
+                    break;
+                }
+                if (split.isInRange.test(message) && matchesSelector(selectorTag, message)) {
+                    inRange.add(message);
+                }
+                if (message.getPosition() >= tailIndex) {
+                    // messages written after the backfill started are left to the live consumer
+                    reachedEnd = true;
+                    break;
+                }
+            }
+            if (!inRange.isEmpty()) {
+                handler.onMessages(inRange, consumer);
+                progress.addProcessedMessages(inRange.size());
+                if (handler instanceof MethodLocalQueueHandler
+                        && ((MethodLocalQueueHandler) handler).isRedeliveryPending()) {
+                    // the consumer was moved back, the end has to be read again
+                    reachedEnd = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Backfill consumers read all tags, so the end of a split is seen even if its last message has another tag
+     */
+    private static boolean matchesSelector(String selectorTag, QueueMessage message) {
+        return "*".equals(selectorTag) || selectorTag.equals(message.getTag());
+    }
+
+    private SimpleConsumer createConsumer(String consumerId) {
+        SimpleConsumerConfig.Builder builder = new SimpleConsumerConfig.Builder()
+                .setConsumerId(consumerId)
+                .setDataDir(new File(properties.getConsumer().getDataDir()))
+                .setSelectorTag("*")
+                .setPullInterval(PULL_INTERVAL_MILLIS);
+        RollCycleType rollCycleType = properties.resolveConsumerRollCycleType();
+        if (rollCycleType != null) {
+            builder.setRollCycleType(rollCycleType);
+        }
+        return new SimpleConsumer(builder.build());
+    }
+
+    private long readTailIndex() {
+        try (ChronicleQueueIndexReader indexReader =
+                     new ChronicleQueueIndexReader(new File(properties.getConsumer().getDataDir()))) {
+            return indexReader.getLastIndex();
+        }
+    }
+
+    private static long getCycleMillis(RollCycleType rollCycleType) {
+        if (rollCycleType == RollCycleType.HOURLY) {
+            return TimeUnit.HOURS.toMillis(1);
+        }
+        return TimeUnit.DAYS.toMillis(1);
+    }
+
+    private static class BackfillSplit {
+        private final String name;
+        private final Predicate<SimpleConsumer> seek;
+        private final Predicate<QueueMessage> isAfterEnd;
+        private final Predicate<QueueMessage> isInRange;
+
+        private BackfillSplit(String name, Predicate<SimpleConsumer> seek, Predicate<QueueMessage> isAfterEnd,
+                Predicate<QueueMessage> isInRange) {
+            this.name = name;
+            this.seek = seek;
+            this.isAfterEnd = isAfterEnd;
+            this.isInRange = isInRange;
+        }
+    }
+}
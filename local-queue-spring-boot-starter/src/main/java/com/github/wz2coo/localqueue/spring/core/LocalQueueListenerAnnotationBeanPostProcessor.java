@@ -2,17 +2,38 @@ package com.github.wz2coo.localqueue.spring.core;
 
 
 import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.index.LocalQueueListenerIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.util.ReflectionUtils;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.env.Environment;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LocalQueueListenerAnnotationBeanPostProcessor implements BeanPostProcessor {
 
+    /**
+     * Set to true to only scan classes listed in the build-time listener index
+     * Listeners of classes compiled without LocalQueueListenerIndexProcessor, for example in jars built
+     * elsewhere, are not registered while the index is enabled
+     */
+    public static final String LISTENER_INDEX_ENABLED_PROPERTY = "localqueue.listener-index.enabled";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     private final ListenerRegistry registry;
     private final ConfigurableApplicationContext context;
+    private final Set<Class<?>> nonAnnotatedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>(64));
+    private volatile LocalQueueListenerIndex listenerIndex;
+    private volatile boolean listenerIndexResolved;
 
     public LocalQueueListenerAnnotationBeanPostProcessor(ListenerRegistry registry, ConfigurableApplicationContext context) {
         this.registry = registry;
@@ -21,19 +42,51 @@ public class LocalQueueListenerAnnotationBeanPostProcessor implements BeanPostPr
 
     @Override
     public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
-        Class<?> beanClass = bean.getClass();
-        
-        // Process method-level annotations
-        ReflectionUtils.doWithMethods(beanClass, method -> {
-            LocalQueueListener methodAnnotation = 
-                method.getAnnotation(LocalQueueListener.class);
-            if (methodAnnotation != null) {
-                String customerId = methodAnnotation.customerId();
-                MethodLocalQueueHandler methodListener = new MethodLocalQueueHandler(bean, method);
-                registry.register(customerId, methodAnnotation, methodListener);
-            }
-        });
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if (nonAnnotatedClasses.contains(targetClass)) {
+            return bean;
+        }
+        LocalQueueListenerIndex index = getListenerIndex();
+        if (index != null && !index.mayDeclareListeners(targetClass)) {
+            nonAnnotatedClasses.add(targetClass);
+            return bean;
+        }
+
+        // Process method-level annotations, overridden methods are only visited once
+        Map<Method, LocalQueueListener> annotatedMethods = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<LocalQueueListener>) method ->
+                        method.getAnnotation(LocalQueueListener.class));
+        if (annotatedMethods.isEmpty()) {
+            nonAnnotatedClasses.add(targetClass);
+            return bean;
+        }
+        for (Map.Entry<Method, LocalQueueListener> entry : annotatedMethods.entrySet()) {
+            LocalQueueListener methodAnnotation = entry.getValue();
+            String customerId = methodAnnotation.customerId();
+            Method invocableMethod = AopUtils.selectInvocableMethod(entry.getKey(), bean.getClass());
+            MethodLocalQueueHandler methodListener = new MethodLocalQueueHandler(bean, invocableMethod, methodAnnotation);
+            registry.register(customerId, methodAnnotation, methodListener);
+        }
         
         return bean;
     }
+
+    private LocalQueueListenerIndex getListenerIndex() {
+        if (!listenerIndexResolved) {
+            Environment environment = context.getEnvironment();
+            if (environment != null && environment.getProperty(LISTENER_INDEX_ENABLED_PROPERTY, Boolean.class, false)) {
+                listenerIndex = LocalQueueListenerIndex.load(context.getClassLoader() != null
+                        ? context.getClassLoader() : getClass().getClassLoader());
+                if (listenerIndex == null) {
+                    logger.warn("[local-queue] listener index enabled but {} not found, fall back to scanning",
+                            LocalQueueListenerIndex.INDEX_LOCATION);
+                } else {
+                    logger.info("[local-queue] use listener index with {} classes",
+                            listenerIndex.getListenerClasses().size());
+                }
+            }
+            listenerIndexResolved = true;
+        }
+        return listenerIndex;
+    }
 }
@@ -2,71 +2,192 @@ package com.github.wz2coo.localqueue.spring.core;
 
 import com.github.wz2coo.localqueue.spring.autoconfigure.LocalQueueProperties;
 import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.model.DedupMode;
 import com.github.wz2cool.localqueue.impl.SimpleConsumer;
 import com.github.wz2cool.localqueue.model.config.SimpleConsumerConfig;
+import com.github.wz2cool.localqueue.model.enums.RollCycleType;
 import com.github.wz2cool.localqueue.model.message.QueueMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 public class LocalQueueMessageListenerContainer {
 
+    private static final long GROUP_RECOVERY_INTERVAL = 5_000;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final ListenerRegistry registry;
     private final LocalQueueProperties properties;
     private final ConfigurableApplicationContext context;
+    private final ConsumerPositionRegistry positionRegistry;
+    private final ListenerLatencyRegistry latencyRegistry;
     private final Map<String, ExecutorService> customerIdExecutors = new ConcurrentHashMap<>();
     private final Map<String, SimpleConsumer> consumerMap = new ConcurrentHashMap<>();
+    private final Map<String, MessageDeduplicator> deduplicatorMap = new ConcurrentHashMap<>();
+    private final Map<String, ConsumerGroupLocalQueueHandler> groupHandlerMap = new ConcurrentHashMap<>();
+    private final Map<String, ListenerSeekControl> seekControlMap = new ConcurrentHashMap<>();
+    /**
+     * Positions by customer ID, registered under the consumer ID so every group member publishes its own
+     */
+    private final Map<String, ConsumerPosition> positionMap = new ConcurrentHashMap<>();
 
     public LocalQueueMessageListenerContainer(ListenerRegistry registry, LocalQueueProperties properties,
             ConfigurableApplicationContext context) {
+        this(registry, properties, context, new ConsumerPositionRegistry(), new ListenerLatencyRegistry());
+    }
+
+    public LocalQueueMessageListenerContainer(ListenerRegistry registry, LocalQueueProperties properties,
+            ConfigurableApplicationContext context, ConsumerPositionRegistry positionRegistry,
+            ListenerLatencyRegistry latencyRegistry) {
         this.registry = registry;
         this.properties = properties;
         this.context = context;
+        this.positionRegistry = positionRegistry;
+        this.latencyRegistry = latencyRegistry;
     }
 
     public void start() {
         logger.info("[local-queue] start local queue listener container");
+        String dataDir = properties.getConsumer().getDataDir();
+        if (dataDir != null) {
+            positionRegistry.startPublishing(new File(dataDir));
+        }
         Set<String> customerIds = registry.getCustomerIds();
         for (String customerId : customerIds) {
             LocalQueueHandler handler = registry.getCustomerHandler(customerId);
             LocalQueueListener annotation = registry.getCustomerAnnotation(customerId);
+            ConsumerGroupCoordinator coordinator = annotation.consumerGroup() ? joinGroup(annotation) : null;
+            String consumerId = coordinator == null
+                    ? customerId : customerId + "-member-" + coordinator.getMemberSlot();
             ExecutorService executorService = Executors.newSingleThreadExecutor();
-            SimpleConsumer consumer = getConsumer(annotation);
+            SimpleConsumer consumer = getConsumer(annotation, consumerId);
             customerIdExecutors.put(customerId, executorService);
             consumerMap.put(customerId, consumer);
-            executorService.execute(() -> {
-                while (!Thread.currentThread().isInterrupted()) {
+            ConsumerPosition position = positionRegistry.register(consumerId, "*".equals(annotation.selectorTag()));
+            positionMap.put(customerId, position);
+            ListenerLatency latency = latencyRegistry.register(customerId);
+            MessageDeduplicator deduplicator = createDeduplicator(annotation, consumerId);
+            AcknowledgmentListener acknowledgmentListener = (ackedConsumer, messages) -> {
+                if (deduplicator != null) {
+                    // unacknowledged messages must still be delivered again
+                    deduplicator.markProcessed(messages);
+                }
+                if (ackedConsumer == consumer) {
+                    position.update(messages);
+                    latency.recordAcknowledged(messages);
+                }
+                ConsumerGroupLocalQueueHandler groupHandler = groupHandlerMap.get(customerId);
+                if (groupHandler != null) {
+                    // claims are only completed over acknowledged messages
+                    groupHandler.onAcknowledged(messages);
+                }
+            };
+            if (handler instanceof MethodLocalQueueHandler) {
+                ((MethodLocalQueueHandler) handler).setAcknowledgmentListener(acknowledgmentListener);
+            }
+            LocalQueueHandler dedupHandler = deduplicator == null
+                    ? handler : new DeduplicatingLocalQueueHandler(handler, deduplicator, acknowledgmentListener);
+            LocalQueueHandler dispatchHandler = coordinator == null ? dedupHandler
+                    : decorateGroupHandler(annotation, coordinator, consumer, dedupHandler,
+                            message -> isSkippedWithoutAcknowledgment(handler, deduplicator, message));
+            ListenerSeekControl seekControl = new ListenerSeekControl();
+            seekControlMap.put(customerId, seekControl);
+            if (annotation.adaptive()) {
+                executorService.execute(() -> adaptivePollLoop(annotation, consumer, dispatchHandler, latency,
+                        seekControl));
+            } else {
+                executorService.execute(() -> pollLoop(annotation, consumer, dispatchHandler, latency, seekControl));
+            }
+            logger.info("[local-queue] start listener container for customerId: {}, selectorTag: {}",
+                    customerId, annotation.selectorTag());
+        }
+    }
+
+    private void pollLoop(LocalQueueListener annotation, SimpleConsumer consumer, LocalQueueHandler handler,
+            ListenerLatency latency, ListenerSeekControl seekControl) {
+        seekControl.bind(Thread.currentThread());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                seekControl.beforeWait();
+                List<QueueMessage> queueMessages =
+                        seekControl.afterWait(consumer.batchTake(annotation.maxBatchSize()), consumer);
+                if (queueMessages.isEmpty()) {
+                    continue;
+                }
+                latency.recordDispatch(queueMessages);
+                handler.onMessages(queueMessages, consumer);
+                // ACK is now handled inside the handler based on ACK mode
+            } catch (InterruptedException e) {
+                if (!seekControl.onInterrupted()) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (Exception e) {
+                logger.error("[local-queue] consumer error", e);
+            }
+        }
+    }
+
+    private void adaptivePollLoop(LocalQueueListener annotation, SimpleConsumer consumer, LocalQueueHandler handler,
+            ListenerLatency latency, ListenerSeekControl seekControl) {
+        AdaptiveBatchController controller = new AdaptiveBatchController(annotation.minBatchSize(),
+                annotation.maxBatchSize(), annotation.targetLatency());
+        seekControl.bind(Thread.currentThread());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                seekControl.beforeWait();
+                int batchSize = controller.getBatchSize();
+                // while idle, block on the consumer cache which is filled every pullInterval
+                List<QueueMessage> queueMessages = seekControl.afterWait(controller.isIdle()
+                        ? consumer.batchTake(batchSize) : consumer.batchPoll(batchSize), consumer);
+                int received = queueMessages.size();
+                if (received > 0) {
+                    latency.recordDispatch(queueMessages);
+                    long startNanos = System.nanoTime();
                     try {
-                        List<QueueMessage> queueMessages = consumer.batchTake(annotation.maxBatchSize());
                         handler.onMessages(queueMessages, consumer);
-                        // ACK is now handled inside the handler based on ACK mode
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    } catch (Exception e) {
-                        logger.error("[local-queue] consumer error", e);
+                    } finally {
+                        controller.onBatch(batchSize, received, System.nanoTime() - startNanos);
                     }
+                } else {
+                    controller.onBatch(batchSize, 0, 0);
                 }
-            });
-            logger.info("[local-queue] start listener container for customerId: {}, selectorTag: {}",
-                    customerId, annotation.selectorTag());
+            } catch (InterruptedException e) {
+                if (!seekControl.onInterrupted()) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (Exception e) {
+                logger.error("[local-queue] consumer error", e);
+            }
         }
     }
 
     public void stop() {
         logger.info("[local-queue] stop local queue listener container");
+        positionRegistry.stopPublishing();
+        for (ListenerSeekControl seekControl : seekControlMap.values()) {
+            seekControl.close();
+        }
         for (Map.Entry<String, SimpleConsumer> entry : consumerMap.entrySet()) {
             SimpleConsumer consumer = entry.getValue();
             consumer.close();
+            ConsumerPosition position = positionMap.remove(entry.getKey());
+            if (position != null) {
+                positionRegistry.unregister(position.getCustomerId());
+            }
         }
 
         for (Map.Entry<String, ExecutorService> entry : customerIdExecutors.entrySet()) {
@@ -74,7 +195,7 @@ public class LocalQueueMessageListenerContainer {
             executorService.shutdownNow(); // Use shutdownNow() to interrupt running tasks
             try {
                 // Wait for thread termination, maximum 5 seconds
-                if (!executorService.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
                     logger.warn("[local-queue] ExecutorService did not terminate gracefully for customerId: {}",
                             entry.getKey());
                 }
@@ -83,19 +204,218 @@ public class LocalQueueMessageListenerContainer {
                 logger.warn("[local-queue] Interrupted while waiting for ExecutorService termination");
             }
         }
+
+        for (ConsumerGroupLocalQueueHandler groupHandler : groupHandlerMap.values()) {
+            groupHandler.close();
+        }
+
+        for (MessageDeduplicator deduplicator : deduplicatorMap.values()) {
+            deduplicator.saveSnapshot();
+        }
+    }
+
+    /**
+     * Move the consumer to the earliest message in the queue
+     *
+     * @param customerId customer ID
+     * @return true if moved
+     */
+    public boolean seekToEarliest(String customerId) {
+        return seekToTimestamp(customerId, 0L);
+    }
+
+    /**
+     * Move the consumer behind the latest message, skipping the backlog
+     *
+     * @param customerId customer ID
+     * @return true if moved
+     */
+    public boolean seekToLatest(String customerId) {
+        SimpleConsumer consumer = getRunningConsumer(customerId);
+        ListenerSeekControl seekControl = seekControlMap.get(customerId);
+        return seek(customerId, "latest", () -> {
+            long lastIndex;
+            try (ChronicleQueueIndexReader indexReader =
+                         new ChronicleQueueIndexReader(new File(properties.getConsumer().getDataDir()))) {
+                lastIndex = indexReader.getLastIndex();
+            }
+            if (lastIndex < 0) {
+                // empty queue, there is nothing to skip
+                return true;
+            }
+            // the library can only move onto a message, move onto the last one and skip it
+            if (!consumer.moveToPosition(lastIndex)) {
+                return false;
+            }
+            seekControl.skipThrough(lastIndex);
+            return true;
+        });
+    }
+
+    /**
+     * Move the consumer to a position, the message at the position is delivered next
+     *
+     * @param customerId customer ID
+     * @param position   queue position
+     * @return true if moved
+     */
+    public boolean seekToPosition(String customerId, long position) {
+        SimpleConsumer consumer = getRunningConsumer(customerId);
+        return seek(customerId, "position " + position, () -> consumer.moveToPosition(position));
+    }
+
+    /**
+     * Move the consumer to the first message written at or after the timestamp
+     *
+     * @param customerId customer ID
+     * @param timestamp  epoch milliseconds
+     * @return true if moved
+     */
+    public boolean seekToTimestamp(String customerId, long timestamp) {
+        SimpleConsumer consumer = getRunningConsumer(customerId);
+        return seek(customerId, "timestamp " + timestamp, () -> consumer.moveToTimestamp(timestamp));
+    }
+
+    private SimpleConsumer getRunningConsumer(String customerId) {
+        if (groupHandlerMap.containsKey(customerId)) {
+            // members only read, the group cursor decides what is processed
+            throw new IllegalStateException("Seek is not supported in consumer group mode, customerId: "
+                    + customerId);
+        }
+        SimpleConsumer consumer = consumerMap.get(customerId);
+        if (consumer == null || consumer.isClosed()) {
+            throw new IllegalStateException("No running consumer for customerId: " + customerId);
+        }
+        return consumer;
+    }
+
+    /**
+     * Run a seek on the listener thread between batches, then forget all state tied to the old position
+     */
+    private boolean seek(String customerId, String target, BooleanSupplier move) {
+        try {
+            return seekControlMap.get(customerId).seek(() -> {
+                boolean moved = move.getAsBoolean();
+                if (moved) {
+                    afterSeek(customerId);
+                    logger.info("[local-queue] seek customerId: {} to {}", customerId, target);
+                } else {
+                    logger.warn("[local-queue] failed to seek customerId: {} to {}", customerId, target);
+                }
+                return moved;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
-    private SimpleConsumer getConsumer(LocalQueueListener annotation) {
+    private void afterSeek(String customerId) {
+        ConsumerPosition position = positionMap.get(customerId);
+        if (position != null) {
+            position.reset();
+        }
+        // replayed messages must reach the listener again
+        MessageDeduplicator deduplicator = deduplicatorMap.get(customerId);
+        if (deduplicator != null) {
+            deduplicator.clear();
+            deduplicator.saveSnapshot();
+        }
+        LocalQueueHandler handler = registry.getCustomerHandler(customerId);
+        if (handler instanceof MethodLocalQueueHandler) {
+            ((MethodLocalQueueHandler) handler).clearRedeliverySkipPositions();
+        }
+    }
+
+    private ConsumerGroupCoordinator joinGroup(LocalQueueListener annotation) {
+        File groupDir = new File(new File(properties.getConsumer().getDataDir(), "groups"), annotation.customerId());
+        ConsumerGroupCoordinator coordinator = new ConsumerGroupCoordinator(groupDir);
+        try {
+            coordinator.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to join consumer group: " + groupDir, e);
+        }
+        return coordinator;
+    }
+
+    private ConsumerGroupLocalQueueHandler decorateGroupHandler(LocalQueueListener annotation,
+            ConsumerGroupCoordinator coordinator, SimpleConsumer consumer, LocalQueueHandler handler,
+            Predicate<QueueMessage> alreadyProcessed) {
+        File dataDir = new File(properties.getConsumer().getDataDir());
+        try {
+            long cursor = coordinator.getCursor();
+            if (cursor < 0) {
+                // the listener ran as a single consumer before, continue behind what it processed
+                long previousPosition = positionRegistry.getPublishedPosition(dataDir, annotation.customerId());
+                cursor = coordinator.seedCursor(previousPosition);
+                if (previousPosition >= 0) {
+                    logger.info("[local-queue] consumer group of customerId: {} starts behind position: {}",
+                            annotation.customerId(), cursor);
+                }
+            }
+            // members publish their own positions, the one of the single consumer is carried over by the cursor
+            positionRegistry.removePublishedPosition(dataDir, annotation.customerId());
+            // everything up to the cursor is claimed by some member, start reading behind it
+            if (cursor >= 0 && !consumer.moveToPosition(cursor)) {
+                logger.warn("[local-queue] failed to move member of customerId: {} to group cursor: {}",
+                        annotation.customerId(), cursor);
+            }
+        } catch (IOException e) {
+            coordinator.close();
+            throw new UncheckedIOException("failed to read consumer group cursor", e);
+        }
+        String recoveryConsumerId = annotation.customerId() + "-recovery-" + coordinator.getMemberSlot();
+        ConsumerGroupLocalQueueHandler groupHandler = new ConsumerGroupLocalQueueHandler(handler, coordinator,
+                alreadyProcessed, () -> getConsumer(annotation, recoveryConsumerId),
+                new ChronicleQueueIndexReader(dataDir),
+                annotation.maxBatchSize(), GROUP_RECOVERY_INTERVAL);
+        groupHandlerMap.put(annotation.customerId(), groupHandler);
+        logger.info("[local-queue] enable consumer group for customerId: {}, member: {}",
+                annotation.customerId(), coordinator.getMemberSlot());
+        return groupHandler;
+    }
+
+    /**
+     * Messages the handler chain passes over without acknowledging them again
+     */
+    private static boolean isSkippedWithoutAcknowledgment(LocalQueueHandler handler, MessageDeduplicator deduplicator,
+            QueueMessage message) {
+        if (deduplicator != null && deduplicator.isDuplicate(message)) {
+            return true;
+        }
+        return handler instanceof MethodLocalQueueHandler
+                && ((MethodLocalQueueHandler) handler).isRedeliverySkipped(message);
+    }
+
+    private MessageDeduplicator createDeduplicator(LocalQueueListener annotation, String consumerId) {
+        if (annotation.dedupMode() == DedupMode.NONE) {
+            return null;
+        }
+        // group members keep their own snapshot, processes must not overwrite each other's file
+        File snapshotFile = new File(new File(properties.getConsumer().getDataDir(), "dedup"),
+                consumerId + ".dedup");
+        MessageDeduplicator deduplicator = new MessageDeduplicator(annotation.dedupMode(),
+                annotation.dedupCapacity(), snapshotFile);
+        deduplicatorMap.put(annotation.customerId(), deduplicator);
+        logger.info("[local-queue] enable dedup for customerId: {}, mode: {}, capacity: {}",
+                annotation.customerId(), annotation.dedupMode(), annotation.dedupCapacity());
+        return deduplicator;
+    }
+
+    private SimpleConsumer getConsumer(LocalQueueListener annotation, String consumerId) {
         String dataDir = properties.getConsumer().getDataDir();
         if (logger.isDebugEnabled()) {
             logger.debug("[local-queue] consumer data dir: {}", dataDir);
         }
-        SimpleConsumerConfig config = new SimpleConsumerConfig.Builder()
-                .setConsumerId(annotation.customerId())
+        SimpleConsumerConfig.Builder builder = new SimpleConsumerConfig.Builder()
+                .setConsumerId(consumerId)
                 .setDataDir(new File(dataDir))
                 .setSelectorTag(annotation.selectorTag())
-                .setPullInterval(annotation.pullInterval())
-                .build();
-        return new SimpleConsumer(config);
+                .setPullInterval(annotation.pullInterval());
+        RollCycleType rollCycleType = properties.resolveConsumerRollCycleType();
+        if (rollCycleType != null) {
+            builder.setRollCycleType(rollCycleType);
+        }
+        return new SimpleConsumer(builder.build());
     }
 }
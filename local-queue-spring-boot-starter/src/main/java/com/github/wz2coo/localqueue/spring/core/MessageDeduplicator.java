@@ -0,0 +1,134 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.model.DedupMode;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Tracks processed message keys of one listener so redelivered messages can be skipped
+ * Keys are kept in a {@link BoundedLongSet} and persisted as a compact snapshot of longs
+ */
+public class MessageDeduplicator {
+
+    private static final int SNAPSHOT_MAGIC = 0x4C514444;
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DedupMode mode;
+    private final BoundedLongSet processedKeys;
+    private final File snapshotFile;
+
+    public MessageDeduplicator(DedupMode mode, int capacity, File snapshotFile) {
+        this.mode = mode;
+        this.processedKeys = new BoundedLongSet(capacity);
+        this.snapshotFile = snapshotFile;
+        loadSnapshot();
+    }
+
+    public synchronized boolean isDuplicate(QueueMessage message) {
+        long key = keyOf(message);
+        return key != NO_KEY && processedKeys.contains(key);
+    }
+
+    public synchronized void markProcessed(QueueMessage message) {
+        long key = keyOf(message);
+        if (key != NO_KEY) {
+            processedKeys.add(key);
+        }
+    }
+
+    public synchronized void markProcessed(List<QueueMessage> messages) {
+        for (QueueMessage message : messages) {
+            markProcessed(message);
+        }
+    }
+
+    /**
+     * Forget all processed keys, used when the consumer is moved to replay messages
+     */
+    public synchronized void clear() {
+        processedKeys.clear();
+    }
+
+    public synchronized int size() {
+        return processedKeys.size();
+    }
+
+    /**
+     * Write the processed keys to the snapshot file, replacing the previous snapshot atomically
+     */
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        long[] keys;
+        synchronized (this) {
+            keys = processedKeys.toArray();
+        }
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        File tempFile = new File(parent, snapshotFile.getName() + ".tmp");
+        try {
+            Files.createDirectories(parent.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(keys.length);
+                for (long key : keys) {
+                    out.writeLong(key);
+                }
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("[local-queue] failed to save dedup snapshot: {}", snapshotFile, e);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (snapshotFile == null || !snapshotFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                logger.warn("[local-queue] ignore invalid dedup snapshot: {}", snapshotFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                processedKeys.add(in.readLong());
+            }
+            logger.info("[local-queue] loaded {} dedup keys from {}", processedKeys.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("[local-queue] failed to load dedup snapshot: {}", snapshotFile, e);
+            processedKeys.clear();
+        }
+    }
+
+    private long keyOf(QueueMessage message) {
+        if (mode == DedupMode.POSITION) {
+            return message.getPosition();
+        }
+        String messageKey = message.getMessageKey();
+        if (messageKey == null || messageKey.isEmpty()) {
+            return NO_KEY;
+        }
+        return hash64(messageKey);
+    }
+
+    private static long hash64(String value) {
+        // FNV-1a, 64 bit keys keep collisions negligible for bounded key sets
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash == NO_KEY ? hash + 1 : hash;
+    }
+}
@@ -3,6 +3,7 @@ package com.github.wz2coo.localqueue.spring.core;
 import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
 import com.github.wz2coo.localqueue.spring.model.AckMode;
 import com.github.wz2coo.localqueue.spring.model.Acknowledgment;
+import com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment;
 import com.github.wz2cool.localqueue.impl.SimpleConsumer;
 import com.github.wz2cool.localqueue.model.message.QueueMessage;
 import org.slf4j.Logger;
@@ -10,42 +11,84 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 public class MethodLocalQueueHandler implements LocalQueueHandler {
 
+    /**
+     * Positions acknowledged behind a failed message, remembered so they are skipped on redelivery
+     */
+    private static final int REDELIVERY_SKIP_CAPACITY = 65536;
+    private static final int DEFAULT_MAX_DELIVERY_ATTEMPTS = 5;
+    private static final long DEFAULT_REDELIVERY_BACKOFF_MILLIS = 1000;
+    private static final Object[] NO_ARGS = new Object[0];
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     
     private final Object bean;
     private final Method method;
     private final AckMode ackMode;
+    private final int maxDeliveryAttempts;
+    private final long redeliveryBackoff;
+    private final Parameter[] parameters;
+    private final boolean acknowledgmentExposed;
+    private final ThreadLocal<DispatchState> dispatchState = ThreadLocal.withInitial(DispatchState::new);
+    private final boolean batchAcknowledgmentSignature;
+    private final BoundedLongSet redeliverySkipPositions;
+    private volatile AcknowledgmentListener acknowledgmentListener;
     
     public MethodLocalQueueHandler(Object bean, Method method) {
+        this(bean, method, method.getAnnotation(LocalQueueListener.class));
+    }
+    
+    public MethodLocalQueueHandler(Object bean, Method method, LocalQueueListener annotation) {
         this.bean = bean;
         this.method = method;
         this.method.setAccessible(true);
         
         // Get ACK mode
-        LocalQueueListener annotation = method.getAnnotation(LocalQueueListener.class);
         this.ackMode = annotation != null ? annotation.ackMode() : AckMode.AUTO;
+        this.maxDeliveryAttempts = annotation != null ? annotation.maxDeliveryAttempts() : DEFAULT_MAX_DELIVERY_ATTEMPTS;
+        this.redeliveryBackoff = annotation != null ? annotation.redeliveryBackoff() : DEFAULT_REDELIVERY_BACKOFF_MILLIS;
+        
+        this.parameters = method.getParameters();
+        boolean hasAcknowledgment = false;
+        boolean hasBatchAcknowledgment = false;
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            hasAcknowledgment |= Acknowledgment.class.isAssignableFrom(parameterType);
+            hasBatchAcknowledgment |= BatchAcknowledgment.class.isAssignableFrom(parameterType);
+        }
+        // Acknowledgments handed to listener code may be kept, only reuse them when they are not
+        this.acknowledgmentExposed = hasAcknowledgment;
+        this.batchAcknowledgmentSignature = hasBatchAcknowledgment;
+        this.redeliverySkipPositions = hasBatchAcknowledgment ? new BoundedLongSet(REDELIVERY_SKIP_CAPACITY) : null;
     }
     
     @Override
     public void onMessages(List<QueueMessage> messages, SimpleConsumer consumer) {
-        DefaultAcknowledgment batchAcknowledgment = new DefaultAcknowledgment(consumer, messages);
+        if (batchAcknowledgmentSignature) {
+            // Per-message ACK decides the committed prefix, ACK mode decides unresolved messages
+            invokeWithBatchAcknowledgment(messages, consumer);
+            return;
+        }
+        DispatchState state = acknowledgmentExposed ? null : dispatchState.get();
+        DefaultAcknowledgment batchAcknowledgment = state != null
+                ? state.batchAcknowledgment.reset(consumer, messages, acknowledgmentListener)
+                : new DefaultAcknowledgment(consumer, messages, acknowledgmentListener);
         
         try {
-            Parameter[] parameters = method.getParameters();
-            
             if (parameters.length == 0) {
                 // No parameter method
-                method.invoke(bean);
+                method.invoke(bean, NO_ARGS);
                 handleAutoAck(batchAcknowledgment);
             } else if (parameters.length == 1) {
-                invokeWithSingleParameter(parameters[0], messages, consumer, batchAcknowledgment);
+                invokeWithSingleParameter(parameters[0], messages, consumer, batchAcknowledgment, state);
             } else if (parameters.length == 2) {
-                invokeWithTwoParameters(parameters, messages, consumer, batchAcknowledgment);
+                invokeWithTwoParameters(parameters, messages, consumer, batchAcknowledgment, state);
             } else {
                 logger.warn("Unsupported method signature with {} parameters", parameters.length);
             }
@@ -65,19 +108,166 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
         }
     }
     
-    private void invokeWithSingleParameter(Parameter parameter, List<QueueMessage> messages, SimpleConsumer consumer, DefaultAcknowledgment batchAcknowledgment) throws Exception {
+    /**
+     * Forget the messages acknowledged out of order before a redelivery, used when the consumer is moved
+     */
+    public void clearRedeliverySkipPositions() {
+        if (redeliverySkipPositions != null) {
+            synchronized (redeliverySkipPositions) {
+                redeliverySkipPositions.clear();
+            }
+        }
+    }
+
+    /**
+     * Check whether a message was acknowledged out of order and is skipped when delivered again
+     *
+     * @param message message
+     * @return true if the message is not passed to the listener again
+     */
+    public boolean isRedeliverySkipped(QueueMessage message) {
+        if (redeliverySkipPositions == null) {
+            return false;
+        }
+        synchronized (redeliverySkipPositions) {
+            return redeliverySkipPositions.contains(message.getPosition());
+        }
+    }
+
+    /**
+     * Check whether the last dispatch on the current thread moved the consumer back to redeliver messages
+     *
+     * @return true if messages of the last batch will be delivered again
+     */
+    public boolean isRedeliveryPending() {
+        return dispatchState.get().redeliveryPending;
+    }
+
+    private void invokeWithBatchAcknowledgment(List<QueueMessage> messages, SimpleConsumer consumer) {
+        DispatchState state = dispatchState.get();
+        state.redeliveryPending = false;
+        List<QueueMessage> deliverMessages = new ArrayList<>(messages.size());
+        synchronized (redeliverySkipPositions) {
+            for (QueueMessage message : messages) {
+                if (!redeliverySkipPositions.contains(message.getPosition())) {
+                    deliverMessages.add(message);
+                }
+            }
+        }
+        if (deliverMessages.isEmpty()) {
+            new DefaultAcknowledgment(consumer, messages, acknowledgmentListener).acknowledge();
+            return;
+        }
+        
+        DefaultBatchAcknowledgment batchAcknowledgment =
+                new DefaultBatchAcknowledgment(consumer, deliverMessages, acknowledgmentListener);
+        Exception failure = null;
+        try {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            Object[] args = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (BatchAcknowledgment.class.isAssignableFrom(parameterTypes[i])) {
+                    args[i] = batchAcknowledgment;
+                } else if (List.class.isAssignableFrom(parameterTypes[i])) {
+                    args[i] = deliverMessages;
+                } else {
+                    throw new IllegalStateException("Unsupported parameter type with BatchAcknowledgment: "
+                            + parameterTypes[i].getName());
+                }
+            }
+            method.invoke(bean, args);
+        } catch (Exception e) {
+            logger.error("Error invoking listener method", e);
+            failure = e;
+        }
+        
+        if (ackMode == AckMode.AUTO || (ackMode == AckMode.AUTO_SUCCESS && failure == null)) {
+            batchAcknowledgment.acknowledgePending();
+        }
+        giveUpExhaustedMessage(batchAcknowledgment, deliverMessages, state);
+        int committed = batchAcknowledgment.commit();
+        if (committed < deliverMessages.size()) {
+            synchronized (redeliverySkipPositions) {
+                for (int i = committed + 1; i < deliverMessages.size(); i++) {
+                    if (batchAcknowledgment.isAcknowledged(i)) {
+                        redeliverySkipPositions.add(deliverMessages.get(i).getPosition());
+                    }
+                }
+            }
+            QueueMessage firstFailed = deliverMessages.get(committed);
+            consumer.moveToPosition(firstFailed.getPosition());
+            state.redeliveryPending = true;
+            logger.info("[local-queue] Committed {} of {} messages, redeliver from position {} in {} ms",
+                    committed, deliverMessages.size(), firstFailed.getPosition(), redeliveryBackoff);
+            backOff();
+        } else if (deliverMessages.size() < messages.size()) {
+            // Skipped messages behind the last delivered one only need the position moved
+            int lastDeliveredIndex = messages.indexOf(deliverMessages.get(deliverMessages.size() - 1));
+            if (lastDeliveredIndex + 1 < messages.size()) {
+                new DefaultAcknowledgment(consumer, messages.subList(lastDeliveredIndex + 1, messages.size()),
+                        acknowledgmentListener).acknowledge();
+            }
+        }
+        
+        if (failure != null) {
+            throw new RuntimeException("Failed to invoke listener method", failure);
+        }
+    }
+    
+    /**
+     * Count a failed delivery of the first unacknowledged message, acknowledge it once its attempts are used up
+     */
+    private void giveUpExhaustedMessage(DefaultBatchAcknowledgment batchAcknowledgment,
+            List<QueueMessage> deliverMessages, DispatchState state) {
+        int firstFailed = batchAcknowledgment.getFirstUnacknowledged();
+        if (firstFailed >= deliverMessages.size()) {
+            state.failedPosition = -1;
+            return;
+        }
+        long position = deliverMessages.get(firstFailed).getPosition();
+        state.failedAttempts = state.failedPosition == position ? state.failedAttempts + 1 : 1;
+        state.failedPosition = position;
+        if (maxDeliveryAttempts > 0 && state.failedAttempts >= maxDeliveryAttempts) {
+            logger.warn("[local-queue] Message at position {} failed {} times, acknowledge and skip it",
+                    position, state.failedAttempts);
+            batchAcknowledgment.acknowledge(firstFailed);
+            state.failedPosition = -1;
+        }
+    }
+
+    private void backOff() {
+        if (redeliveryBackoff <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(redeliveryBackoff);
+        } catch (InterruptedException e) {
+            // stopping, the consumer already points at the failed message
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void invokeWithSingleParameter(Parameter parameter, List<QueueMessage> messages, SimpleConsumer consumer, DefaultAcknowledgment batchAcknowledgment, DispatchState state) throws Exception {
         Class<?> paramType = parameter.getType();
         
         if (List.class.isAssignableFrom(paramType)) {
             // Parameter is List<QueueMessage> - batch processing
-            method.invoke(bean, messages);
+            if (state != null) {
+                state.invoke(method, bean, messages);
+            } else {
+                method.invoke(bean, messages);
+            }
             handleAutoAck(batchAcknowledgment);
         } else if (QueueMessage.class.isAssignableFrom(paramType)) {
             // Parameter is single QueueMessage, call one by one
             for (QueueMessage message : messages) {
-                DefaultAcknowledgment singleAck = new DefaultAcknowledgment(consumer, Collections.singletonList(message));
+                DefaultAcknowledgment singleAck = newSingleAcknowledgment(consumer, message, state);
                 try {
-                    method.invoke(bean, message);
+                    if (state != null) {
+                        state.invoke(method, bean, message);
+                    } else {
+                        method.invoke(bean, message);
+                    }
                     handleAutoAck(singleAck);
                 } catch (Exception e) {
                     handleExceptionForSingleMessage(singleAck, e);
@@ -92,7 +282,7 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
         }
     }
     
-    private void invokeWithTwoParameters(Parameter[] parameters, List<QueueMessage> messages, SimpleConsumer consumer, DefaultAcknowledgment batchAcknowledgment) throws Exception {
+    private void invokeWithTwoParameters(Parameter[] parameters, List<QueueMessage> messages, SimpleConsumer consumer, DefaultAcknowledgment batchAcknowledgment, DispatchState state) throws Exception {
         Class<?> param1Type = parameters[0].getType();
         Class<?> param2Type = parameters[1].getType();
         
@@ -102,7 +292,7 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
         if (isSingleMessageProcessing) {
             // Process each message individually
             for (QueueMessage message : messages) {
-                DefaultAcknowledgment singleAck = new DefaultAcknowledgment(consumer, java.util.Arrays.asList(message));
+                DefaultAcknowledgment singleAck = newSingleAcknowledgment(consumer, message, state);
                 Object arg2 = null;
                 
                 // Determine second parameter
@@ -157,6 +347,14 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
         }
     }
     
+    private DefaultAcknowledgment newSingleAcknowledgment(SimpleConsumer consumer, QueueMessage message, DispatchState state) {
+        if (state == null) {
+            return new DefaultAcknowledgment(consumer, Collections.singletonList(message), acknowledgmentListener);
+        }
+        state.singleMessage.message = message;
+        return state.singleAcknowledgment.reset(consumer, state.singleMessage, acknowledgmentListener);
+    }
+    
     private void handleAutoAck(DefaultAcknowledgment acknowledgment) {
         // Decide whether to auto acknowledge based on ACK mode
         if (ackMode == AckMode.AUTO || ackMode == AckMode.AUTO_SUCCESS) {
@@ -178,6 +376,15 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
         throw e;
     }
     
+    /**
+     * Set the callback notified after messages are acknowledged
+     *
+     * @param acknowledgmentListener acknowledgment listener
+     */
+    public void setAcknowledgmentListener(AcknowledgmentListener acknowledgmentListener) {
+        this.acknowledgmentListener = acknowledgmentListener;
+    }
+    
     public Object getBean() {
         return bean;
     }
@@ -185,4 +392,48 @@ public class MethodLocalQueueHandler implements LocalQueueHandler {
     public Method getMethod() {
         return method;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Per-thread objects reused for every dispatch when no acknowledgment reaches listener code
+     */
+    private static class DispatchState {
+        private final DefaultAcknowledgment batchAcknowledgment =
+                new DefaultAcknowledgment(null, Collections.emptyList());
+        private final DefaultAcknowledgment singleAcknowledgment =
+                new DefaultAcknowledgment(null, Collections.emptyList());
+        private final SingleMessageList singleMessage = new SingleMessageList();
+        private final Object[] singleArg = new Object[1];
+        private long failedPosition = -1;
+        private int failedAttempts;
+        private boolean redeliveryPending;
+        
+        private void invoke(Method method, Object bean, Object arg) throws Exception {
+            singleArg[0] = arg;
+            try {
+                method.invoke(bean, singleArg);
+            } finally {
+                singleArg[0] = null;
+            }
+        }
+    }
+    
+    /**
+     * Mutable single element list, replaces Collections.singletonList on the reuse path
+     */
+    private static class SingleMessageList extends AbstractList<QueueMessage> implements RandomAccess {
+        private QueueMessage message;
+        
+        @Override
+        public QueueMessage get(int index) {
+            if (index != 0) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 1");
+            }
+            return message;
+        }
+        
+        @Override
+        public int size() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.autoconfigure.LocalQueueProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background reclaimer enforcing size and file count retention on the producer data dir
+ * Only deletes roll cycle files older than the cycle every known consumer has acknowledged, local consumers
+ * and the ones publishing their position to the data dir alike,
+ * without known consumers nothing is deleted unless reclaimWithoutConsumers is set
+ */
+public class QueueFileReclaimer {
+
+    private static final String CYCLE_FILE_SUFFIX = ".cq4";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final LocalQueueProperties.Producer properties;
+    private final ConsumerPositionRegistry positionRegistry;
+    private final QueueIndexReader indexReader;
+    private ScheduledExecutorService scheduler;
+
+    public QueueFileReclaimer(LocalQueueProperties.Producer properties, ConsumerPositionRegistry positionRegistry) {
+        this(properties, positionRegistry, properties.getDataDir() == null
+                ? null : new ChronicleQueueIndexReader(new File(properties.getDataDir())));
+    }
+
+    QueueFileReclaimer(LocalQueueProperties.Producer properties, ConsumerPositionRegistry positionRegistry,
+            QueueIndexReader indexReader) {
+        this.properties = properties;
+        this.positionRegistry = positionRegistry;
+        this.indexReader = indexReader;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (indexReader == null || (properties.getMaxTotalBytes() <= 0 && properties.getMaxFileCount() <= 0)) {
+            return;
+        }
+        logger.info("[local-queue] start file reclaimer, maxTotalBytes: {}, maxFileCount: {}",
+                properties.getMaxTotalBytes(), properties.getMaxFileCount());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-queue-reclaimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getReclaimInterval();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reclaim();
+            } catch (Exception e) {
+                logger.error("[local-queue] reclaim error", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (indexReader instanceof Closeable) {
+            try {
+                ((Closeable) indexReader).close();
+            } catch (IOException e) {
+                logger.warn("[local-queue] failed to close index reader", e);
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest cycle files until the retention limits are satisfied
+     *
+     * @return number of deleted files
+     */
+    public int reclaim() {
+        File[] files = new File(properties.getDataDir()).listFiles((dir, name) -> name.endsWith(CYCLE_FILE_SUFFIX));
+        if (files == null || files.length <= 1) {
+            return 0;
+        }
+        // cycle file names sort in time order
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        int fileCount = files.length;
+        long minAckedCycle = !positionRegistry.hasConsumers() && properties.isReclaimWithoutConsumers()
+                ? Long.MAX_VALUE : getMinAckedCycle();
+        int deleted = 0;
+        // never touch the last file, the appender is writing to it
+        for (int i = 0; i < files.length - 1 && isOverLimit(totalBytes, fileCount); i++) {
+            File file = files[i];
+            long fileCycle = indexReader.getFileCycle(file.getName());
+            // the file holding the acknowledged index is still needed to read on from it
+            if (minAckedCycle < 0 || fileCycle < 0 || fileCycle >= minAckedCycle) {
+                logger.warn("[local-queue] retention limit exceeded but consumers have not passed file: {}",
+                        file.getName());
+                break;
+            }
+            long length = file.length();
+            if (!file.delete()) {
+                logger.warn("[local-queue] failed to delete file: {}", file.getAbsolutePath());
+                break;
+            }
+            totalBytes -= length;
+            fileCount--;
+            deleted++;
+            logger.info("[local-queue] reclaimed file: {}, {} bytes", file.getName(), length);
+        }
+        return deleted;
+    }
+
+    private long getMinAckedCycle() {
+        long minAckedPosition = positionRegistry.getMinAckedPosition();
+        return minAckedPosition < 0 ? -1 : indexReader.toCycle(minAckedPosition);
+    }
+
+    private boolean isOverLimit(long totalBytes, int fileCount) {
+        return (properties.getMaxTotalBytes() > 0 && totalBytes > properties.getMaxTotalBytes())
+                || (properties.getMaxFileCount() > 0 && fileCount > properties.getMaxFileCount());
+    }
+}
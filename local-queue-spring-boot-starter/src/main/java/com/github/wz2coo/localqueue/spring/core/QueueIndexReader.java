@@ -0,0 +1,38 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+/**
+ * Reads index information from the queue files written by the producer
+ */
+public interface QueueIndexReader {
+
+    /**
+     * @return index of the last written message, -1 if the queue is empty or unreadable
+     */
+    long getLastIndex();
+
+    /**
+     * @return index of the first message still in the queue files, -1 if the queue is empty or unreadable
+     */
+    long getFirstIndex();
+
+    /**
+     * Count the messages after fromIndex up to and including toIndex
+     *
+     * @param fromIndex index of an already consumed message
+     * @param toIndex   index of the last message to count
+     * @return number of messages, -1 if unknown
+     */
+    long countBetween(long fromIndex, long toIndex);
+
+    /**
+     * @param index message index
+     * @return roll cycle the index belongs to, -1 if unknown
+     */
+    long toCycle(long index);
+
+    /**
+     * @param fileName name of a roll cycle file
+     * @return roll cycle stored in the file, -1 if unknown
+     */
+    long getFileCycle(String fileName);
+}
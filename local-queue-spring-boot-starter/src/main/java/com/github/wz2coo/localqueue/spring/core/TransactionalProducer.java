@@ -0,0 +1,147 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.IProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Producer deferring messages offered inside a Spring transaction until the transaction commits
+ * Buffered messages are appended as one contiguous group after commit and dropped on rollback,
+ * outside a transaction messages are offered immediately, they take the same lock so they never split a group
+ * Messages offered from another synchronization's afterCommit are appended once the transaction completed
+ */
+public class TransactionalProducer implements IProducer {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IProducer delegate;
+    private final Object appendLock = new Object();
+
+    public TransactionalProducer(IProducer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean offer(String message) {
+        return offer(null, null, message);
+    }
+
+    @Override
+    public boolean offer(String messageKey, String message) {
+        return offer(null, messageKey, message);
+    }
+
+    @Override
+    public boolean offer(String tag, String messageKey, String message) {
+        PendingMessage pendingMessage = new PendingMessage(tag, messageKey, message);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (appendLock) {
+                return append(pendingMessage);
+            }
+        }
+        TransactionBuffer buffer = getTransactionBuffer();
+        if (buffer.appended) {
+            // offered by a synchronization running after the group was appended, the transaction is committed
+            synchronized (appendLock) {
+                return append(pendingMessage);
+            }
+        }
+        buffer.messages.add(pendingMessage);
+        return true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private TransactionBuffer getTransactionBuffer() {
+        TransactionBuffer buffer = (TransactionBuffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer != null) {
+            return buffer;
+        }
+        TransactionBuffer newBuffer = new TransactionBuffer();
+        TransactionSynchronizationManager.bindResource(this, newBuffer);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                newBuffer.append();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TransactionalProducer.this);
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    // registered from another synchronization's afterCommit, afterCommit is not called on it
+                    newBuffer.append();
+                } else if (!newBuffer.messages.isEmpty()) {
+                    logger.debug("[local-queue] transaction not committed, dropped {} messages",
+                            newBuffer.messages.size());
+                }
+            }
+        });
+        return newBuffer;
+    }
+
+    private void appendGroup(List<PendingMessage> messages) {
+        int failed = 0;
+        synchronized (appendLock) {
+            for (PendingMessage message : messages) {
+                if (!append(message)) {
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) {
+            logger.error("[local-queue] failed to append {} of {} messages after commit", failed, messages.size());
+        }
+    }
+
+    private boolean append(PendingMessage message) {
+        if (message.tag != null) {
+            return delegate.offer(message.tag, message.messageKey, message.content);
+        }
+        if (message.messageKey != null) {
+            return delegate.offer(message.messageKey, message.content);
+        }
+        return delegate.offer(message.content);
+    }
+
+    /**
+     * Messages of one transaction, confined to the transaction's thread
+     */
+    private class TransactionBuffer {
+        private final List<PendingMessage> messages = new ArrayList<>();
+        private boolean appended;
+
+        private void append() {
+            if (!appended) {
+                appended = true;
+                appendGroup(messages);
+            }
+        }
+    }
+
+    private static class PendingMessage {
+        private final String tag;
+        private final String messageKey;
+        private final String content;
+
+        private PendingMessage(String tag, String messageKey, String content) {
+            this.tag = tag;
+            this.messageKey = messageKey;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.wz2coo.localqueue.spring.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Build-time index of the classes declaring @LocalQueueListener methods
+ * Generated by {@link LocalQueueListenerIndexProcessor}, merged across all jars on the classpath
+ */
+public class LocalQueueListenerIndex {
+
+    public static final String INDEX_LOCATION = "META-INF/local-queue-listeners.index";
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalQueueListenerIndex.class);
+
+    private final Set<String> listenerClasses;
+
+    LocalQueueListenerIndex(Set<String> listenerClasses) {
+        this.listenerClasses = listenerClasses;
+    }
+
+    /**
+     * Load the index from the class loader
+     *
+     * @param classLoader class loader
+     * @return index, null if no index file is present
+     */
+    public static LocalQueueListenerIndex load(ClassLoader classLoader) {
+        Set<String> listenerClasses = new HashSet<>();
+        boolean found = false;
+        try {
+            Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+            while (urls.hasMoreElements()) {
+                found = true;
+                URL url = urls.nextElement();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty()) {
+                            listenerClasses.add(line);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("[local-queue] failed to load listener index, fall back to scanning", e);
+            return null;
+        }
+        return found ? new LocalQueueListenerIndex(listenerClasses) : null;
+    }
+
+    /**
+     * Check whether the class or one of its superclasses declares listener methods
+     *
+     * @param clazz class
+     * @return true if listener methods may be declared
+     */
+    public boolean mayDeclareListeners(Class<?> clazz) {
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            if (listenerClasses.contains(current.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getListenerClasses() {
+        return listenerClasses;
+    }
+}
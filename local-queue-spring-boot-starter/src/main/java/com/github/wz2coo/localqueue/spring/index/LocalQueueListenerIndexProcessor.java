@@ -0,0 +1,128 @@
+package com.github.wz2coo.localqueue.spring.index;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor writing the classes declaring @LocalQueueListener methods to
+ * {@link LocalQueueListenerIndex#INDEX_LOCATION}, so startup can skip scanning other beans
+ * Incremental builds only compile changed classes, so entries of the existing index are kept
+ * as long as their class still declares listener methods; the processor therefore runs for every
+ * compilation, not only those containing the annotation
+ * It is not registered as a service and never runs on its own, applications opt in by naming it with
+ * javac -processor or the annotationProcessors setting of the maven-compiler-plugin
+ */
+@SupportedAnnotationTypes("*")
+public class LocalQueueListenerIndexProcessor extends AbstractProcessor {
+
+    static final String LISTENER_ANNOTATION = "com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener";
+
+    private final Set<String> listenerClasses = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            if (!LISTENER_ANNOTATION.equals(annotation.getQualifiedName().toString())) {
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (element.getKind() == ElementKind.METHOD && enclosing instanceof TypeElement) {
+                    listenerClasses.add(processingEnv.getElementUtils()
+                            .getBinaryName((TypeElement) enclosing).toString());
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            Set<String> previousClasses = readPreviousIndex();
+            for (String previousClass : previousClasses) {
+                if (declaresListeners(previousClass)) {
+                    listenerClasses.add(previousClass);
+                }
+            }
+            if (!listenerClasses.isEmpty() || !previousClasses.isEmpty()) {
+                writeIndex();
+            }
+        }
+        return false;
+    }
+
+    private Set<String> readPreviousIndex() {
+        Set<String> previousClasses = new TreeSet<>();
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", LocalQueueListenerIndex.INDEX_LOCATION);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        previousClasses.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no index from an earlier build
+        }
+        return previousClasses;
+    }
+
+    /**
+     * Classes compiled earlier are read from the class output, classes of this compilation from source
+     */
+    private boolean declaresListeners(String binaryName) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+        if (type == null) {
+            return false;
+        }
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
+                if (LISTENER_ANNOTATION.equals(annotationMirror.getAnnotationType().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", LocalQueueListenerIndex.INDEX_LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String listenerClass : listenerClasses) {
+                    writer.write(listenerClass);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write local queue listener index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.wz2coo.localqueue.spring.model;
+
+/**
+ * Per-message acknowledgment for batch listeners
+ * Indexes refer to the message list passed to the listener
+ * When the listener returns, the contiguous acknowledged prefix is committed and
+ * consumption resumes from the first message that was not acknowledged,
+ * messages acknowledged after it are not delivered again
+ * Messages neither acknowledged nor nacked follow the ACK mode: AUTO acknowledges them even if the listener throws,
+ * AUTO_SUCCESS only if it returns normally, otherwise and with MANUAL they are treated as nacked
+ * A failed message is delivered again after the listener's redeliveryBackoff, once it failed
+ * maxDeliveryAttempts times it is acknowledged and skipped with a warning
+ */
+public interface BatchAcknowledgment extends Acknowledgment {
+
+    /**
+     * Confirm processing completion of one message
+     *
+     * @param index message index
+     */
+    void acknowledge(int index);
+
+    /**
+     * Mark one message as failed, it will be delivered again
+     *
+     * @param index message index
+     */
+    void nack(int index);
+
+    /**
+     * Mark the message at index and all following messages as failed
+     *
+     * @param index first failed message index
+     */
+    void nackFrom(int index);
+}
@@ -0,0 +1,22 @@
+package com.github.wz2coo.localqueue.spring.model;
+
+/**
+ * Duplicate message detection mode
+ */
+public enum DedupMode {
+
+    /**
+     * No duplicate detection (default)
+     */
+    NONE,
+
+    /**
+     * Detect duplicates by message key, messages without key are never skipped
+     */
+    MESSAGE_KEY,
+
+    /**
+     * Detect duplicates by queue position
+     */
+    POSITION
+}
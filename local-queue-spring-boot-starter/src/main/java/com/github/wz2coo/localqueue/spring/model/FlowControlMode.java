@@ -0,0 +1,22 @@
+package com.github.wz2coo.localqueue.spring.model;
+
+/**
+ * Producer flow control mode, applied when consumer lag exceeds the threshold
+ */
+public enum FlowControlMode {
+
+    /**
+     * Block the producer until consumers catch up
+     */
+    BLOCK,
+
+    /**
+     * Block the producer up to the configured timeout, then reject the message
+     */
+    TIMEOUT,
+
+    /**
+     * Reject the message immediately
+     */
+    REJECT
+}
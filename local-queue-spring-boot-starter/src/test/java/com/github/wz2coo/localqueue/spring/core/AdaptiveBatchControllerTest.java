@@ -0,0 +1,63 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchControllerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void testGrowWhileFullBatchesAreFast() {
+        // Given
+        AdaptiveBatchController controller = new AdaptiveBatchController(1, 64, 100);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            int batchSize = controller.getBatchSize();
+            controller.onBatch(batchSize, batchSize, FAST);
+        }
+
+        // Then
+        assertEquals(64, controller.getBatchSize());
+        assertFalse(controller.isIdle());
+    }
+
+    @Test
+    void testHalveWhenTargetLatencyExceeded() {
+        // Given
+        AdaptiveBatchController controller = new AdaptiveBatchController(4, 64, 100);
+        for (int i = 0; i < 100; i++) {
+            controller.onBatch(controller.getBatchSize(), controller.getBatchSize(), FAST);
+        }
+
+        // When
+        controller.onBatch(64, 64, SLOW);
+        controller.onBatch(32, 32, SLOW);
+        controller.onBatch(16, 16, SLOW);
+        controller.onBatch(8, 8, SLOW);
+        controller.onBatch(4, 4, SLOW);
+
+        // Then
+        assertEquals(4, controller.getBatchSize());
+    }
+
+    @Test
+    void testIdleUntilMessagesArrive() {
+        // Given
+        AdaptiveBatchController controller = new AdaptiveBatchController(1, 10, 100);
+        assertFalse(controller.isIdle());
+
+        // When & Then
+        controller.onBatch(1, 0, 0);
+        assertTrue(controller.isIdle());
+        controller.onBatch(1, 0, 0);
+        assertTrue(controller.isIdle());
+        controller.onBatch(1, 1, FAST);
+        assertFalse(controller.isIdle());
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.model.AckMode;
+import com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BatchAcknowledgmentTest {
+
+    private BatchConsumer batchConsumer;
+    private MethodLocalQueueHandler handler;
+    private SimpleConsumer simpleConsumer;
+    private List<QueueMessage> messages;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        batchConsumer = new BatchConsumer();
+        Method method = BatchConsumer.class.getMethod("handleBatch", List.class, BatchAcknowledgment.class);
+        handler = new MethodLocalQueueHandler(batchConsumer, method);
+        simpleConsumer = mock(SimpleConsumer.class);
+        messages = Arrays.asList(message("ok", 1), message("ok", 2), message("bad", 3), message("ok", 4));
+    }
+
+    @Test
+    void testCommitSuccessPrefixAndRedeliverFailure() {
+        // When
+        handler.onMessages(messages, simpleConsumer);
+
+        // Then
+        verify(simpleConsumer, times(1)).ack(messages.subList(0, 2));
+        verify(simpleConsumer, times(1)).moveToPosition(3);
+    }
+
+    @Test
+    void testSkipMessagesAcknowledgedBehindFailure() {
+        // Given
+        handler.onMessages(messages, simpleConsumer);
+        batchConsumer.handled.clear();
+        batchConsumer.failing = false;
+
+        // When
+        List<QueueMessage> redelivered = messages.subList(2, 4);
+        handler.onMessages(redelivered, simpleConsumer);
+
+        // Then
+        assertEquals(Arrays.asList(3L), batchConsumer.handled);
+        verify(simpleConsumer, times(1)).ack(redelivered.subList(0, 1));
+        verify(simpleConsumer, times(1)).ack(redelivered.subList(1, 2));
+    }
+
+    @Test
+    void testUnresolvedMessagesTreatedAsNacked() {
+        // Given
+        DefaultBatchAcknowledgment acknowledgment = new DefaultBatchAcknowledgment(simpleConsumer, messages, null);
+        acknowledgment.acknowledge(0);
+        acknowledgment.acknowledge(2);
+
+        // When
+        int committed = acknowledgment.commit();
+
+        // Then
+        assertEquals(1, committed);
+        verify(simpleConsumer, times(1)).ack(messages.subList(0, 1));
+    }
+
+    @Test
+    void testNackFromAndIndexCheck() {
+        // Given
+        DefaultBatchAcknowledgment acknowledgment = new DefaultBatchAcknowledgment(simpleConsumer, messages, null);
+        acknowledgment.acknowledge();
+        acknowledgment.nackFrom(3);
+
+        // When & Then
+        assertThrows(IndexOutOfBoundsException.class, () -> acknowledgment.nack(4));
+        assertEquals(3, acknowledgment.commit());
+    }
+
+    @Test
+    void testGiveUpAfterMaxDeliveryAttempts() throws Exception {
+        // Given
+        MethodLocalQueueHandler limited = handler("handleLimited");
+        List<QueueMessage> bad = messages.subList(2, 4);
+        limited.onMessages(bad, simpleConsumer);
+        assertTrue(limited.isRedeliveryPending());
+
+        // When the message fails a second time
+        limited.onMessages(bad, simpleConsumer);
+
+        // Then it is acknowledged and skipped, the message behind it was acknowledged the first time
+        assertFalse(limited.isRedeliveryPending());
+        verify(simpleConsumer, times(1)).moveToPosition(3);
+        verify(simpleConsumer, times(1)).ack(bad.subList(0, 1));
+        verify(simpleConsumer, times(1)).ack(bad.subList(1, 2));
+    }
+
+    @Test
+    void testAutoModeAcknowledgesUnresolvedMessagesOnException() throws Exception {
+        // When
+        assertThrows(RuntimeException.class, () -> handler("handleThrowingAuto").onMessages(messages, simpleConsumer));
+
+        // Then only the nacked message and the ones behind it are delivered again
+        verify(simpleConsumer, times(1)).ack(messages.subList(0, 1));
+        verify(simpleConsumer, times(1)).moveToPosition(2);
+    }
+
+    @Test
+    void testManualModeRedeliversUnresolvedMessagesOnException() throws Exception {
+        // When
+        assertThrows(RuntimeException.class,
+                () -> handler("handleThrowingManual").onMessages(messages, simpleConsumer));
+
+        // Then
+        verify(simpleConsumer, times(1)).ack(messages.subList(0, 1));
+        verify(simpleConsumer, times(1)).moveToPosition(2);
+    }
+
+    @Test
+    void testRedeliveryWaitsForBackoff() throws Exception {
+        // Given
+        MethodLocalQueueHandler backoff = handler("handleWithBackoff");
+        long start = System.nanoTime();
+
+        // When
+        backoff.onMessages(messages, simpleConsumer);
+
+        // Then
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        verify(simpleConsumer, times(1)).moveToPosition(1);
+    }
+
+    private MethodLocalQueueHandler handler(String methodName) throws NoSuchMethodException {
+        return new MethodLocalQueueHandler(batchConsumer,
+                BatchConsumer.class.getMethod(methodName, List.class, BatchAcknowledgment.class));
+    }
+
+    private QueueMessage message(String content, long position) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getContent()).thenReturn(content);
+        when(message.getPosition()).thenReturn(position);
+        return message;
+    }
+
+    public static class BatchConsumer {
+
+        private final List<Long> handled = new ArrayList<>();
+        private boolean failing = true;
+
+        @LocalQueueListener(customerId = "batch-ack-customer", maxBatchSize = 100, redeliveryBackoff = 0)
+        public void handleBatch(List<QueueMessage> messages, BatchAcknowledgment ack) {
+            for (int i = 0; i < messages.size(); i++) {
+                handled.add(messages.get(i).getPosition());
+                if (failing && "bad".equals(messages.get(i).getContent())) {
+                    ack.nack(i);
+                } else {
+                    ack.acknowledge(i);
+                }
+            }
+        }
+
+        @LocalQueueListener(customerId = "limited-customer", maxDeliveryAttempts = 2, redeliveryBackoff = 0)
+        public void handleLimited(List<QueueMessage> messages, BatchAcknowledgment ack) {
+            handleBatch(messages, ack);
+        }
+
+        @LocalQueueListener(customerId = "auto-customer", redeliveryBackoff = 0)
+        public void handleThrowingAuto(List<QueueMessage> messages, BatchAcknowledgment ack) {
+            ack.nack(1);
+            throw new IllegalStateException("failed");
+        }
+
+        @LocalQueueListener(customerId = "manual-customer", ackMode = AckMode.MANUAL, redeliveryBackoff = 0)
+        public void handleThrowingManual(List<QueueMessage> messages, BatchAcknowledgment ack) {
+            ack.acknowledge(0);
+            throw new IllegalStateException("failed");
+        }
+
+        @LocalQueueListener(customerId = "backoff-customer", redeliveryBackoff = 200)
+        public void handleWithBackoff(List<QueueMessage> messages, BatchAcknowledgment ack) {
+            ack.nack(0);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsumerGroupCoordinatorTest {
+
+    @TempDir
+    Path groupDir;
+
+    private ConsumerGroupCoordinator memberA;
+    private ConsumerGroupCoordinator memberB;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        memberA = new ConsumerGroupCoordinator(groupDir.toFile());
+        memberB = new ConsumerGroupCoordinator(groupDir.toFile());
+        memberA.join();
+        memberB.join();
+    }
+
+    @AfterEach
+    void tearDown() {
+        memberA.close();
+        memberB.close();
+    }
+
+    @Test
+    void testMembersTakeDifferentSlots() throws IOException {
+        // Then
+        assertEquals(0, memberA.getMemberSlot());
+        assertEquals(1, memberB.getMemberSlot());
+        assertEquals(-1, memberA.getCursor());
+    }
+
+    @Test
+    void testMessageIsClaimedByOneMember() throws IOException {
+        // When
+        ConsumerGroupCoordinator.Claim claimA = memberA.claim(messages(1, 2, 3));
+        ConsumerGroupCoordinator.Claim claimB = memberB.claim(messages(1, 2, 3, 4, 5));
+
+        // Then
+        assertEquals(3, claimA.getMessages().size());
+        assertEquals(2, claimB.getMessages().size());
+        assertEquals(4, claimB.getFromPosition());
+        assertEquals(5, claimB.getToPosition());
+        assertEquals(5, memberA.getCursor());
+        assertTrue(memberA.claim(messages(4, 5)).getMessages().isEmpty());
+    }
+
+    @Test
+    void testClaimOfDeadMemberIsTakenOverOnce() throws IOException {
+        // Given
+        memberA.claim(messages(1, 2, 3));
+        memberA.close();
+
+        // When
+        List<ConsumerGroupCoordinator.Claim> claims = memberB.takeOverRecoverableClaims();
+
+        // Then
+        assertEquals(1, claims.size());
+        assertEquals(1, claims.get(0).getFromPosition());
+        assertEquals(3, claims.get(0).getToPosition());
+        assertTrue(memberB.takeOverRecoverableClaims().isEmpty());
+    }
+
+    @Test
+    void testClaimOfLiveMemberIsNotTakenOver() throws IOException {
+        // Given
+        ConsumerGroupCoordinator.Claim claim = memberA.claim(messages(1, 2));
+
+        // Then
+        assertTrue(memberB.takeOverRecoverableClaims().isEmpty());
+
+        // When
+        memberA.retry(claim);
+
+        // Then
+        assertEquals(1, memberB.takeOverRecoverableClaims().size());
+    }
+
+    @Test
+    void testSeedCursorOnlyBeforeFirstClaim() throws IOException {
+        // When
+        long seeded = memberA.seedCursor(10);
+
+        // Then
+        assertEquals(10, seeded);
+        assertEquals(10, memberB.seedCursor(20));
+        ConsumerGroupCoordinator.Claim claim = memberB.claim(messages(9, 10, 11));
+        assertEquals(11, claim.getFromPosition());
+    }
+
+    @Test
+    void testRetryRestOfPartiallyProcessedClaim() throws IOException {
+        // Given
+        ConsumerGroupCoordinator.Claim claim = memberA.claim(messages(1, 2, 3, 4));
+
+        // When
+        memberA.retry(claim, 3);
+
+        // Then
+        List<ConsumerGroupCoordinator.Claim> claims = memberB.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(3, claims.get(0).getFromPosition());
+        assertEquals(4, claims.get(0).getToPosition());
+        assertTrue(memberA.takeOverRecoverableClaims().isEmpty());
+    }
+
+    @Test
+    void testRetryAfterLastProcessedPosition() throws IOException {
+        // Given
+        ConsumerGroupCoordinator.Claim claim = memberA.claim(messages(1, 2, 3, 4));
+
+        // When
+        memberA.retryAfter(claim, 2);
+
+        // Then the retried claim starts behind position 2, also after it was given back again
+        ConsumerGroupCoordinator.Claim retried = memberB.takeOverRecoverableClaims().get(0);
+        assertEquals(2, retried.getFromPosition());
+        assertTrue(retried.isFromExclusive());
+        assertEquals(4, retried.getToPosition());
+        memberB.retry(retried);
+        assertTrue(memberB.takeOverRecoverableClaims().get(0).isFromExclusive());
+    }
+
+    private static List<QueueMessage> messages(long... positions) {
+        List<QueueMessage> messages = new ArrayList<>();
+        for (long position : positions) {
+            QueueMessage message = mock(QueueMessage.class);
+            when(message.getPosition()).thenReturn(position);
+            messages.add(message);
+        }
+        return messages;
+    }
+}
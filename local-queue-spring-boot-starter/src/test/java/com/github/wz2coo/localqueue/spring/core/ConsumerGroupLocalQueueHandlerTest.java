@@ -0,0 +1,322 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.model.AckMode;
+import com.github.wz2coo.localqueue.spring.model.Acknowledgment;
+import com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConsumerGroupLocalQueueHandlerTest {
+
+    private static final long NO_SCHEDULED_RECOVERY = 3_600_000;
+
+    @TempDir
+    Path groupDir;
+
+    private ConsumerGroupCoordinator coordinator;
+    private ConsumerGroupLocalQueueHandler groupHandler;
+    private SimpleConsumer consumer;
+    private SimpleConsumer recoveryConsumer;
+    private QueueIndexReader indexReader;
+    private Listeners listeners;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        coordinator = new ConsumerGroupCoordinator(groupDir.toFile());
+        coordinator.join();
+        consumer = mock(SimpleConsumer.class);
+        recoveryConsumer = mock(SimpleConsumer.class);
+        indexReader = mock(QueueIndexReader.class);
+        when(indexReader.getFirstIndex()).thenReturn(1L);
+        listeners = new Listeners();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (groupHandler != null) {
+            groupHandler.close();
+        }
+    }
+
+    @Test
+    void testCompleteClaimWhenAllAcknowledged() throws Exception {
+        // Given
+        createGroupHandler("onBatch", message -> false, List.class);
+        List<QueueMessage> messages = messages(1, 2, 3);
+
+        // When
+        groupHandler.onMessages(messages, consumer);
+
+        // Then
+        assertEquals(Arrays.asList(1L, 2L, 3L), listeners.handled);
+        verify(consumer, atLeastOnce()).ack(messages);
+        assertEquals(3, coordinator.getCursor());
+        assertTrue(coordinator.takeOverRecoverableClaims().isEmpty());
+    }
+
+    @Test
+    void testSkipMessagesClaimedByOtherMembers() throws Exception {
+        // Given
+        createGroupHandler("onBatch", message -> false, List.class);
+        groupHandler.onMessages(messages(1, 2), consumer);
+        listeners.handled.clear();
+
+        // When
+        List<QueueMessage> messages = messages(1, 2, 3);
+        groupHandler.onMessages(messages, consumer);
+
+        // Then
+        assertEquals(Arrays.asList(3L), listeners.handled);
+        verify(consumer, times(1)).ack(messages);
+    }
+
+    @Test
+    void testRetryMessagesNotAcknowledgedByManualListener() throws Exception {
+        // Given
+        createGroupHandler("onManual", message -> false, QueueMessage.class, Acknowledgment.class);
+
+        // When
+        groupHandler.onMessages(messages(1, 2, 3), consumer);
+
+        // Then
+        List<ConsumerGroupCoordinator.Claim> claims = coordinator.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(2, claims.get(0).getFromPosition());
+        assertEquals(3, claims.get(0).getToPosition());
+    }
+
+    @Test
+    void testRetryWholeClaimWhenAutoSuccessListenerFails() throws Exception {
+        // Given
+        createGroupHandler("onBatchFailing", message -> false, List.class);
+
+        // When
+        assertThrows(RuntimeException.class, () -> groupHandler.onMessages(messages(1, 2), consumer));
+
+        // Then
+        List<ConsumerGroupCoordinator.Claim> claims = coordinator.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(1, claims.get(0).getFromPosition());
+        assertEquals(2, claims.get(0).getToPosition());
+    }
+
+    @Test
+    void testMessagesSkippedByDelegateCountAsProcessed() throws Exception {
+        // Given position 2 is a duplicate the delegate does not acknowledge again
+        createGroupHandler("onManual", message -> message.getPosition() == 2,
+                QueueMessage.class, Acknowledgment.class);
+        listeners.acknowledged = position -> position != 2;
+
+        // When
+        groupHandler.onMessages(messages(1, 2, 3), consumer);
+
+        // Then
+        assertTrue(coordinator.takeOverRecoverableClaims().isEmpty());
+    }
+
+    @Test
+    void testRecoverNackedMessagesOfBatchListener() throws Exception {
+        // Given position 2 is nacked and position 3 is acknowledged behind it
+        MethodLocalQueueHandler handler = createGroupHandler("onBatchAcknowledgment", null,
+                List.class, BatchAcknowledgment.class);
+        groupHandler.onMessages(messages(1, 2, 3), consumer);
+        assertEquals(Arrays.asList(1L, 2L, 3L), listeners.handled);
+        listeners.handled.clear();
+        listeners.nackPosition = -1;
+        List<QueueMessage> recovered = messages(2, 3, 4);
+        when(recoveryConsumer.moveToPosition(2)).thenReturn(true);
+        when(recoveryConsumer.batchPoll(anyInt())).thenReturn(recovered);
+
+        // When
+        groupHandler.recover();
+
+        // Then position 3 is not delivered again and the claim is done
+        assertEquals(Arrays.asList(2L), listeners.handled);
+        assertTrue(handler.isRedeliverySkipped(messages(3).get(0)));
+        assertTrue(coordinator.takeOverRecoverableClaims().isEmpty());
+        verify(recoveryConsumer, times(1)).close();
+    }
+
+    @Test
+    void testRecoverClaimOfDeadMember() throws Exception {
+        // Given
+        ConsumerGroupCoordinator deadMember = new ConsumerGroupCoordinator(groupDir.toFile());
+        deadMember.join();
+        deadMember.claim(messages(1, 2, 3));
+        deadMember.close();
+        createGroupHandler("onBatch", message -> false, List.class);
+        List<QueueMessage> recovered = messages(1, 2, 3, 4);
+        when(recoveryConsumer.moveToPosition(1)).thenReturn(true);
+        when(recoveryConsumer.batchPoll(anyInt())).thenReturn(recovered);
+
+        // When
+        groupHandler.recover();
+
+        // Then
+        assertEquals(Arrays.asList(1L, 2L, 3L), listeners.handled);
+        assertTrue(coordinator.takeOverRecoverableClaims().isEmpty());
+        assertEquals(3, coordinator.getCursor());
+    }
+
+    @Test
+    void testGiveClaimBackWhenRecoveredMessagesAreNotAcknowledged() throws Exception {
+        // Given
+        ConsumerGroupCoordinator deadMember = new ConsumerGroupCoordinator(groupDir.toFile());
+        deadMember.join();
+        deadMember.claim(messages(1, 2, 3));
+        deadMember.close();
+        createGroupHandler("onManual", message -> false, QueueMessage.class, Acknowledgment.class);
+        List<QueueMessage> recovered = messages(1, 2, 3);
+        when(recoveryConsumer.moveToPosition(1)).thenReturn(true);
+        when(recoveryConsumer.batchPoll(anyInt())).thenReturn(recovered);
+
+        // When
+        groupHandler.recover();
+
+        // Then
+        List<ConsumerGroupCoordinator.Claim> claims = coordinator.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(2, claims.get(0).getFromPosition());
+        assertEquals(3, claims.get(0).getToPosition());
+    }
+
+    @Test
+    void testGiveClaimBackBehindProcessedMessagesWhenRecoveryStalls() throws Exception {
+        // Given the queue ends in the middle of the claim
+        claimByDeadMember(1, 2, 3);
+        createGroupHandler("onBatch", message -> false, List.class);
+        List<QueueMessage> recovered = messages(1, 2);
+        when(recoveryConsumer.moveToPosition(1)).thenReturn(true);
+        when(recoveryConsumer.batchPoll(anyInt())).thenReturn(recovered, new ArrayList<>());
+
+        // When
+        groupHandler.recover();
+
+        // Then only position 3 is left to process
+        assertEquals(Arrays.asList(1L, 2L), listeners.handled);
+        List<ConsumerGroupCoordinator.Claim> claims = coordinator.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(2, claims.get(0).getFromPosition());
+        assertTrue(claims.get(0).isFromExclusive());
+        assertEquals(3, claims.get(0).getToPosition());
+    }
+
+    @Test
+    void testGiveClaimBackWhenMoveFails() throws Exception {
+        // Given
+        claimByDeadMember(1, 2, 3);
+        createGroupHandler("onBatch", message -> false, List.class);
+        when(recoveryConsumer.moveToPosition(1)).thenReturn(false);
+
+        // When
+        groupHandler.recover();
+
+        // Then
+        assertTrue(listeners.handled.isEmpty());
+        List<ConsumerGroupCoordinator.Claim> claims = coordinator.takeOverRecoverableClaims();
+        assertEquals(1, claims.size());
+        assertEquals(1, claims.get(0).getFromPosition());
+        assertEquals(3, claims.get(0).getToPosition());
+    }
+
+    @Test
+    void testCompleteClaimWhenItsFilesWereReclaimed() throws Exception {
+        // Given
+        claimByDeadMember(1, 2, 3);
+        createGroupHandler("onBatch", message -> false, List.class);
+        when(recoveryConsumer.moveToPosition(1)).thenReturn(false);
+        when(indexReader.getFirstIndex()).thenReturn(10L);
+
+        // When
+        groupHandler.recover();
+
+        // Then
+        assertTrue(listeners.handled.isEmpty());
+        assertTrue(coordinator.takeOverRecoverableClaims().isEmpty());
+    }
+
+    private void claimByDeadMember(long... positions) throws IOException {
+        ConsumerGroupCoordinator deadMember = new ConsumerGroupCoordinator(groupDir.toFile());
+        deadMember.join();
+        deadMember.claim(messages(positions));
+        deadMember.close();
+    }
+
+    /**
+     * @param alreadyProcessed predicate of the group handler, null to use the redelivery skip of the handler
+     */
+    private MethodLocalQueueHandler createGroupHandler(String methodName, Predicate<QueueMessage> alreadyProcessed,
+            Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = Listeners.class.getMethod(methodName, parameterTypes);
+        MethodLocalQueueHandler handler = new MethodLocalQueueHandler(listeners, method);
+        groupHandler = new ConsumerGroupLocalQueueHandler(handler, coordinator,
+                alreadyProcessed != null ? alreadyProcessed : handler::isRedeliverySkipped,
+                () -> recoveryConsumer, indexReader, 10, NO_SCHEDULED_RECOVERY);
+        handler.setAcknowledgmentListener((ackedConsumer, messages) -> groupHandler.onAcknowledged(messages));
+        return handler;
+    }
+
+    private static List<QueueMessage> messages(long... positions) {
+        List<QueueMessage> messages = new ArrayList<>();
+        for (long position : positions) {
+            QueueMessage message = mock(QueueMessage.class);
+            when(message.getPosition()).thenReturn(position);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    public static class Listeners {
+        private final List<Long> handled = new ArrayList<>();
+        private Predicate<Long> acknowledged = position -> position == 1;
+        private long nackPosition = 2;
+
+        @LocalQueueListener(customerId = "batch")
+        public void onBatch(List<QueueMessage> messages) {
+            for (QueueMessage message : messages) {
+                handled.add(message.getPosition());
+            }
+        }
+
+        @LocalQueueListener(customerId = "failing", ackMode = AckMode.AUTO_SUCCESS)
+        public void onBatchFailing(List<QueueMessage> messages) {
+            throw new IllegalStateException("failed");
+        }
+
+        @LocalQueueListener(customerId = "manual", ackMode = AckMode.MANUAL)
+        public void onManual(QueueMessage message, Acknowledgment acknowledgment) {
+            handled.add(message.getPosition());
+            if (acknowledged.test(message.getPosition())) {
+                acknowledgment.acknowledge();
+            }
+        }
+
+        @LocalQueueListener(customerId = "batch-ack", redeliveryBackoff = 0)
+        public void onBatchAcknowledgment(List<QueueMessage> messages, BatchAcknowledgment acknowledgment) {
+            for (int i = 0; i < messages.size(); i++) {
+                handled.add(messages.get(i).getPosition());
+                if (messages.get(i).getPosition() == nackPosition) {
+                    acknowledgment.nack(i);
+                } else {
+                    acknowledgment.acknowledge(i);
+                }
+            }
+        }
+    }
+}
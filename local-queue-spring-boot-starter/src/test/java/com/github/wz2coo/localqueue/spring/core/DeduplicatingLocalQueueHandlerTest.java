@@ -0,0 +1,142 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.model.DedupMode;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeduplicatingLocalQueueHandlerTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testSkipAlreadyProcessedMessages() {
+        // Given
+        List<String> handled = new ArrayList<>();
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.MESSAGE_KEY, 10, null);
+        AcknowledgmentListener listener = (consumer, messages) -> deduplicator.markProcessed(messages);
+        LocalQueueHandler delegate = (messages, consumer) -> {
+            messages.forEach(m -> handled.add(m.getMessageKey()));
+            new DefaultAcknowledgment(consumer, messages, listener).acknowledge();
+        };
+        DeduplicatingLocalQueueHandler handler = new DeduplicatingLocalQueueHandler(delegate, deduplicator, listener);
+        SimpleConsumer consumer = mock(SimpleConsumer.class);
+
+        // When
+        handler.onMessages(Arrays.asList(message("k1", 1), message("k2", 2)), consumer);
+        handler.onMessages(Arrays.asList(message("k2", 3), message("k3", 4)), consumer);
+
+        // Then
+        assertEquals(Arrays.asList("k1", "k2", "k3"), handled);
+    }
+
+    @Test
+    void testAckDuplicateOnlyBatch() {
+        // Given
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.POSITION, 10, null);
+        LocalQueueHandler delegate = mock(LocalQueueHandler.class);
+        DeduplicatingLocalQueueHandler handler = new DeduplicatingLocalQueueHandler(delegate, deduplicator, null);
+        SimpleConsumer consumer = mock(SimpleConsumer.class);
+        List<QueueMessage> messages = Arrays.asList(message("k1", 1));
+        handler.onMessages(messages, consumer);
+        deduplicator.markProcessed(messages);
+
+        // When
+        handler.onMessages(messages, consumer);
+
+        // Then
+        verify(delegate, times(1)).onMessages(messages, consumer);
+        verify(consumer, times(1)).ack(messages);
+    }
+
+    @Test
+    void testUnacknowledgedMessagesAreDeliveredAgainInManualMode() {
+        // Given a MANUAL listener acknowledging only the first message
+        List<String> handled = new ArrayList<>();
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.MESSAGE_KEY, 10, null);
+        AcknowledgmentListener listener = (consumer, messages) -> deduplicator.markProcessed(messages);
+        LocalQueueHandler delegate = (messages, consumer) -> messages.forEach(m -> {
+            handled.add(m.getMessageKey());
+            if ("k1".equals(m.getMessageKey())) {
+                new DefaultAcknowledgment(consumer, Arrays.asList(m), listener).acknowledge();
+            }
+        });
+        DeduplicatingLocalQueueHandler handler = new DeduplicatingLocalQueueHandler(delegate, deduplicator, listener);
+        SimpleConsumer consumer = mock(SimpleConsumer.class);
+
+        // When the batch is redelivered
+        handler.onMessages(Arrays.asList(message("k1", 1), message("k2", 2)), consumer);
+        handler.onMessages(Arrays.asList(message("k1", 1), message("k2", 2)), consumer);
+
+        // Then
+        assertEquals(Arrays.asList("k1", "k2", "k2"), handled);
+    }
+
+    @Test
+    void testNotMarkedWhenHandlerFails() {
+        // Given
+        LocalQueueHandler delegate = (messages, consumer) -> {
+            throw new RuntimeException("Simulated error");
+        };
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.POSITION, 10, null);
+        DeduplicatingLocalQueueHandler handler = new DeduplicatingLocalQueueHandler(delegate, deduplicator, null);
+        QueueMessage message = message("k1", 1);
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> handler.onMessages(Arrays.asList(message), mock(SimpleConsumer.class)));
+        assertFalse(deduplicator.isDuplicate(message));
+    }
+
+    @Test
+    void testClearAllowsReplay() {
+        // Given
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.POSITION, 10, null);
+        QueueMessage message = message("k1", 1);
+        deduplicator.markProcessed(message);
+
+        // When
+        deduplicator.clear();
+
+        // Then
+        assertFalse(deduplicator.isDuplicate(message));
+        assertEquals(0, deduplicator.size());
+    }
+
+    @Test
+    void testSnapshotRoundTripKeepsNewestKeys() {
+        // Given
+        File snapshotFile = dataDir.resolve("dedup/test.dedup").toFile();
+        MessageDeduplicator deduplicator = new MessageDeduplicator(DedupMode.POSITION, 2, snapshotFile);
+        deduplicator.markProcessed(message("k1", 1));
+        deduplicator.markProcessed(message("k2", 2));
+        deduplicator.markProcessed(message("k3", 3));
+
+        // When
+        deduplicator.saveSnapshot();
+        MessageDeduplicator restored = new MessageDeduplicator(DedupMode.POSITION, 2, snapshotFile);
+
+        // Then
+        assertEquals(2, restored.size());
+        assertFalse(restored.isDuplicate(message("k1", 1)));
+        assertTrue(restored.isDuplicate(message("k2", 2)));
+        assertTrue(restored.isDuplicate(message("k3", 3)));
+    }
+
+    private QueueMessage message(String messageKey, long position) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getMessageKey()).thenReturn(messageKey);
+        when(message.getPosition()).thenReturn(position);
+        return message;
+    }
+}
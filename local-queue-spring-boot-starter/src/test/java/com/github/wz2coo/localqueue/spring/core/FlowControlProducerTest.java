@@ -0,0 +1,264 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.model.FlowControlMode;
+import com.github.wz2cool.localqueue.IProducer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FlowControlProducerTest {
+
+    @TempDir
+    Path dataDir;
+
+    private IProducer delegate;
+    private FakeIndexReader indexReader;
+    private ConsumerPositionRegistry positionRegistry;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(IProducer.class);
+        indexReader = new FakeIndexReader();
+        // every offered message is appended at the next index
+        when(delegate.offer(anyString())).thenAnswer(invocation -> {
+            indexReader.lastIndex++;
+            return true;
+        });
+        // refreshed explicitly by the tests
+        positionRegistry = new ConsumerPositionRegistry(indexReader, dataDir.resolve("positions").toFile(), 60_000);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        positionRegistry.close();
+    }
+
+    @Test
+    void testRejectWhenLagExceeded() {
+        // Given
+        FlowControlProducer producer = new FlowControlProducer(delegate, positionRegistry, 2, FlowControlMode.REJECT, 0);
+        indexReader.lastIndex = 0;
+        ack(positionRegistry.register("consumer", true), 0);
+
+        // When & Then
+        assertTrue(producer.offer("m1"));
+        assertTrue(producer.offer("m2"));
+        positionRegistry.refreshMaxLag();
+        assertEquals(2, producer.getLag());
+        assertTrue(producer.isLagExceeded());
+        assertFalse(producer.offer("m3"));
+        verify(delegate, times(2)).offer(anyString());
+    }
+
+    @Test
+    void testAcceptAfterConsumerCatchesUp() {
+        // Given
+        FlowControlProducer producer = new FlowControlProducer(delegate, positionRegistry, 1, FlowControlMode.TIMEOUT, 10);
+        indexReader.lastIndex = 0;
+        ConsumerPosition position = positionRegistry.register("consumer", true);
+        ack(position, 0);
+        assertTrue(producer.offer("m1"));
+        positionRegistry.refreshMaxLag();
+        assertFalse(producer.offer("m2"));
+
+        // When
+        ack(position, 1);
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(0, producer.getLag());
+        assertTrue(producer.offer("m2"));
+    }
+
+    @Test
+    void testSelectorConsumerIgnoredForLag() {
+        // Given
+        FlowControlProducer producer = new FlowControlProducer(delegate, positionRegistry, 1, FlowControlMode.REJECT, 0);
+        ack(positionRegistry.register("selector-consumer", false), 0);
+
+        // When & Then
+        assertTrue(producer.offer("m1"));
+        assertTrue(producer.offer("m2"));
+        positionRegistry.refreshMaxLag();
+        assertEquals(0, producer.getLag());
+        assertEquals(-1, positionRegistry.getLag("selector-consumer"));
+    }
+
+    @Test
+    void testLagAfterRestartCountsBacklogWrittenBeforeRestart() {
+        // Given a backlog of 100 messages written by a previous run of the producer
+        indexReader.lastIndex = 100;
+        FlowControlProducer producer = new FlowControlProducer(delegate, positionRegistry, 50, FlowControlMode.REJECT, 0);
+        ConsumerPosition position = positionRegistry.register("consumer", true);
+
+        // When the consumer resumes and drains part of the backlog
+        ack(position, 10);
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(90, producer.getLag());
+        assertEquals(90, positionRegistry.getLag("consumer"));
+        assertFalse(producer.offer("m1"));
+
+        ack(position, 100);
+        positionRegistry.refreshMaxLag();
+        assertEquals(0, producer.getLag());
+        assertTrue(producer.offer("m1"));
+    }
+
+    @Test
+    void testReplayedAcknowledgmentsAreNotCountedTwice() {
+        // Given
+        indexReader.lastIndex = 10;
+        ConsumerPosition position = positionRegistry.register("consumer", true);
+        ack(position, 10);
+
+        // When the consumer is moved back and acknowledges old messages again
+        position.reset();
+        assertEquals(-1, positionRegistry.getLag("consumer"));
+        ack(position, 4);
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(6, positionRegistry.getMaxLag());
+    }
+
+    @Test
+    void testLagOfConsumerInAnotherProcess() {
+        // Given a consumer registry of another process publishing to the shared data dir
+        indexReader.lastIndex = 20;
+        ConsumerPositionRegistry consumerRegistry = new ConsumerPositionRegistry();
+        ack(consumerRegistry.register("remote-consumer", true), 5);
+
+        // When
+        consumerRegistry.publish(dataDir.resolve("positions").toFile());
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(15, positionRegistry.getMaxLag());
+        assertEquals(15, positionRegistry.getLag("remote-consumer"));
+    }
+
+    @Test
+    void testPublishedPositionOfSelectorConsumerIsNotCountedAsLag() {
+        // Given
+        indexReader.lastIndex = 20;
+        ConsumerPositionRegistry consumerRegistry = new ConsumerPositionRegistry();
+        ack(consumerRegistry.register("tag-consumer", false), 5);
+
+        // When
+        consumerRegistry.publish(dataDir.resolve("positions").toFile());
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(0, positionRegistry.getMaxLag());
+        assertEquals(-1, positionRegistry.getLag("tag-consumer"));
+        assertEquals(5, positionRegistry.getPublishedPosition(dataDir.toFile(), "tag-consumer"));
+        assertEquals(-1, positionRegistry.getPublishedPosition(dataDir.toFile(), "unknown"));
+    }
+
+    @Test
+    void testLagIsReadFromCacheOnOffer() {
+        // Given
+        indexReader.lastIndex = 0;
+        ack(positionRegistry.register("consumer", true), 0);
+        FlowControlProducer producer = new FlowControlProducer(delegate, positionRegistry, 1, FlowControlMode.REJECT, 0);
+        int reads = indexReader.lastIndexReads;
+
+        // When
+        assertTrue(producer.offer("m1"));
+        assertFalse(producer.isLagExceeded());
+
+        // Then the offer path never touched the queue files
+        assertEquals(reads, indexReader.lastIndexReads);
+        positionRegistry.refreshMaxLag();
+        assertTrue(producer.isLagExceeded());
+    }
+
+    @Test
+    void testUnacknowledgedLocalConsumerFallsBackToPublishedPosition() {
+        // Given a consumer that published its position before a restart
+        indexReader.lastIndex = 30;
+        ConsumerPositionRegistry previousRun = new ConsumerPositionRegistry();
+        ack(previousRun.register("consumer", true), 10);
+        previousRun.publish(dataDir.resolve("positions").toFile());
+
+        // When it starts again and has not acknowledged yet
+        positionRegistry.register("consumer", true);
+        positionRegistry.refreshMaxLag();
+
+        // Then
+        assertEquals(20, positionRegistry.getMaxLag());
+        assertEquals(20, positionRegistry.getLag("consumer"));
+    }
+
+    @Test
+    void testGroupMembersPublishTheirOwnPositions() {
+        // Given a single consumer position carried over to a consumer group
+        indexReader.lastIndex = 30;
+        ConsumerPositionRegistry consumerRegistry = new ConsumerPositionRegistry();
+        ack(consumerRegistry.register("group", true), 5);
+        consumerRegistry.publish(dataDir.resolve("positions").toFile());
+        consumerRegistry.unregister("group");
+        consumerRegistry.removePublishedPosition(dataDir.toFile(), "group");
+
+        // When
+        ack(consumerRegistry.register("group-member-0", true), 20);
+        ack(consumerRegistry.register("group-member-1", true), 10);
+        consumerRegistry.publish(dataDir.resolve("positions").toFile());
+        positionRegistry.refreshMaxLag();
+
+        // Then the slowest member counts
+        assertEquals(-1, positionRegistry.getPublishedPosition(dataDir.toFile(), "group"));
+        assertEquals(20, positionRegistry.getPublishedPosition(dataDir.toFile(), "group-member-0"));
+        assertEquals(10, positionRegistry.getPublishedPosition(dataDir.toFile(), "group-member-1"));
+        assertEquals(20, positionRegistry.getMaxLag());
+        assertEquals(10, positionRegistry.getMinAckedPosition());
+    }
+
+    private static void ack(ConsumerPosition position, long index) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getPosition()).thenReturn(index);
+        position.update(Collections.singletonList(message));
+    }
+
+    private static class FakeIndexReader implements QueueIndexReader {
+        private long lastIndex = -1;
+        private int lastIndexReads;
+
+        @Override
+        public long getLastIndex() {
+            lastIndexReads++;
+            return lastIndex;
+        }
+
+        @Override
+        public long getFirstIndex() {
+            return -1;
+        }
+
+        @Override
+        public long countBetween(long fromIndex, long toIndex) {
+            return Math.max(0, toIndex - fromIndex);
+        }
+
+        @Override
+        public long toCycle(long index) {
+            return -1;
+        }
+
+        @Override
+        public long getFileCycle(String fileName) {
+            return -1;
+        }
+    }
+}
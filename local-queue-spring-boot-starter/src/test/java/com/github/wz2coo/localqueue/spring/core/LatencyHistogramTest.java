@@ -0,0 +1,52 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        for (int i = 1; i <= 10000; i++) {
+            histogram.recordValue(i);
+        }
+
+        // Then
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 / 64.0);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 / 64.0);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testBucketsCoverWholeRange() {
+        for (long value : new long[]{0, 1, 127, 128, 1000, 123456789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    void testReset() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(42);
+
+        // When
+        histogram.reset();
+
+        // Then
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
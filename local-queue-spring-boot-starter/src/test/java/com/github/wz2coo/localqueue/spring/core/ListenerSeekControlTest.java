@@ -0,0 +1,141 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ListenerSeekControlTest {
+
+    private final ListenerSeekControl seekControl = new ListenerSeekControl();
+    private final SimpleConsumer consumer = mock(SimpleConsumer.class);
+
+    @Test
+    void testSeekWakesUpWaitingListenerThread() throws Exception {
+        // Given a listener thread blocked waiting for messages
+        BlockingQueue<QueueMessage> cache = new LinkedBlockingQueue<>();
+        AtomicReference<Thread> seekThread = new AtomicReference<>();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread listenerThread = new Thread(() -> {
+            seekControl.bind(Thread.currentThread());
+            try {
+                seekControl.beforeWait();
+                waiting.countDown();
+                cache.take();
+            } catch (InterruptedException e) {
+                assertTrue(seekControl.onInterrupted());
+            }
+        });
+        listenerThread.start();
+        waiting.await();
+
+        // When
+        boolean moved = seekControl.seek(() -> {
+            seekThread.set(Thread.currentThread());
+            return true;
+        });
+
+        // Then
+        listenerThread.join(1000);
+        assertTrue(moved);
+        assertSame(listenerThread, seekThread.get());
+        assertFalse(listenerThread.isAlive());
+    }
+
+    @Test
+    void testSeekWaitsForBatchInProgress() throws Exception {
+        // Given a listener thread handling a batch
+        seekControl.bind(Thread.currentThread());
+        seekControl.beforeWait();
+        seekControl.afterWait(Collections.singletonList(message(1)), consumer);
+        CountDownLatch applied = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<Boolean> result = caller.submit(() -> seekControl.seek(() -> {
+            applied.countDown();
+            return true;
+        }));
+
+        // When & Then
+        assertFalse(applied.await(100, TimeUnit.MILLISECONDS));
+        seekControl.beforeWait();
+        assertTrue(result.get(1, TimeUnit.SECONDS));
+        caller.shutdown();
+    }
+
+    @Test
+    void testBatchTakenDuringSeekIsDropped() throws Exception {
+        // Given
+        seekControl.bind(Thread.currentThread());
+        seekControl.beforeWait();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<Boolean> result = caller.submit(() -> seekControl.seek(() -> true));
+        while (!Thread.currentThread().isInterrupted()) {
+            Thread.yield();
+        }
+
+        // When messages read from the old position arrive
+        List<QueueMessage> messages = seekControl.afterWait(Collections.singletonList(message(1)), consumer);
+
+        // Then
+        assertTrue(messages.isEmpty());
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertTrue(result.get(1, TimeUnit.SECONDS));
+        verify(consumer, never()).ack(anyList());
+        caller.shutdown();
+    }
+
+    @Test
+    void testSkipThroughAcknowledgesLastMessage() {
+        // Given
+        seekControl.skipThrough(5);
+        List<QueueMessage> skipped = Collections.singletonList(message(5));
+
+        // When
+        List<QueueMessage> messages = seekControl.afterWait(Arrays.asList(skipped.get(0), message(6)), consumer);
+
+        // Then
+        assertEquals(1, messages.size());
+        assertEquals(6, messages.get(0).getPosition());
+        verify(consumer).ack(skipped);
+        assertEquals(1, seekControl.afterWait(Collections.singletonList(message(7)), consumer).size());
+    }
+
+    @Test
+    void testLaterSeekClearsSkipThrough() throws InterruptedException {
+        // Given a seek to latest that has not reached its last message yet
+        seekControl.bind(Thread.currentThread());
+        seekControl.skipThrough(5);
+
+        // When the consumer is moved back before it got there
+        assertTrue(seekControl.seek(() -> true));
+        seekControl.beforeWait();
+        List<QueueMessage> messages = seekControl.afterWait(Arrays.asList(message(2), message(3)), consumer);
+
+        // Then
+        assertEquals(2, messages.size());
+        verify(consumer, never()).ack(anyList());
+    }
+
+    @Test
+    void testSeekAfterCloseRejected() {
+        // Given
+        seekControl.close();
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> seekControl.seek(() -> true));
+    }
+
+    private QueueMessage message(long position) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getPosition()).thenReturn(position);
+        return message;
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import com.github.wz2coo.localqueue.spring.autoconfigure.LocalQueueProperties;
+import com.github.wz2coo.localqueue.spring.model.AckMode;
+import com.github.wz2coo.localqueue.spring.model.BatchAcknowledgment;
+import com.github.wz2cool.localqueue.impl.SimpleConsumer;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LocalQueueBackfillTest {
+
+    private final List<Long> handled = new CopyOnWriteArrayList<>();
+    private final List<String> consumerIds = new CopyOnWriteArrayList<>();
+    private ListenerRegistry registry;
+    private SimpleConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new ListenerRegistry();
+        LocalQueueHandler handler = (messages, messageConsumer) -> messages.forEach(m -> handled.add(m.getPosition()));
+        registry.register("all", annotation("onAll"), handler);
+        registry.register("tagged", annotation("onTagged"), handler);
+        consumer = mock(SimpleConsumer.class);
+        when(consumer.moveToPosition(anyLong())).thenReturn(true);
+    }
+
+    @Test
+    void testSplitEndsAtQueueTailAfterEmptyPolls() throws Exception {
+        // Given an empty read cache right after the move
+        List<QueueMessage> first = Arrays.asList(message(1, "a"), message(2, "a"));
+        List<QueueMessage> second = Collections.singletonList(message(3, "a"));
+        when(consumer.batchPoll(anyInt())).thenReturn(Collections.emptyList(), Collections.emptyList(),
+                first, second);
+
+        // When
+        BackfillProgress progress = backfill(3, 1_000).backfillByPosition("all", 2, 10);
+
+        // Then
+        assertTrue(progress.await(5, TimeUnit.SECONDS));
+        assertEquals(1, progress.getCompletedSplits());
+        assertEquals(0, progress.getFailedSplits());
+        assertEquals(Arrays.asList(2L, 3L), handled);
+    }
+
+    @Test
+    void testSplitFailsWhenEndIsNeverReached() throws Exception {
+        // Given
+        List<QueueMessage> messages = Collections.singletonList(message(1, "a"));
+        when(consumer.batchPoll(anyInt())).thenReturn(messages, Collections.emptyList());
+
+        // When
+        BackfillProgress progress = backfill(5, 50).backfillByPosition("all", 1, 10);
+
+        // Then
+        assertTrue(progress.await(5, TimeUnit.SECONDS));
+        assertEquals(0, progress.getCompletedSplits());
+        assertEquals(1, progress.getFailedSplits());
+    }
+
+    @Test
+    void testSelectorTagFilteredWhileEndStillDetected() throws Exception {
+        // Given the last message of the split has another tag
+        List<QueueMessage> messages = Arrays.asList(message(1, "a"), message(2, "b"));
+        when(consumer.batchPoll(anyInt())).thenReturn(messages);
+
+        // When
+        BackfillProgress progress = backfill(2, 1_000).backfillByPosition("tagged", 1, 2);
+
+        // Then
+        assertTrue(progress.await(5, TimeUnit.SECONDS));
+        assertEquals(1, progress.getCompletedSplits());
+        assertEquals(Arrays.asList(1L), handled);
+    }
+
+    @Test
+    void testConsumerIdsReusedAcrossRuns() throws Exception {
+        // Given
+        List<QueueMessage> messages = Collections.singletonList(message(1, "a"));
+        when(consumer.batchPoll(anyInt())).thenReturn(messages);
+        LocalQueueBackfill backfill = backfill(1, 1_000);
+
+        // When
+        assertTrue(backfill.backfillByPosition("all", 1, 1).await(5, TimeUnit.SECONDS));
+        assertTrue(backfill.backfillByPosition("all", 1, 1).await(5, TimeUnit.SECONDS));
+
+        // Then
+        assertEquals(Arrays.asList("all-backfill-0", "all-backfill-0"), consumerIds);
+        verify(consumer, times(2)).close();
+    }
+
+    @Test
+    void testEmptyQueueCompletesWithoutConsumer() throws Exception {
+        // When
+        BackfillProgress progress = backfill(-1, 1_000).backfillByPosition("all", 1, 10);
+
+        // Then
+        assertTrue(progress.await(5, TimeUnit.SECONDS));
+        assertEquals(1, progress.getCompletedSplits());
+        assertTrue(consumerIds.isEmpty());
+    }
+
+    @Test
+    void testBackfillLeavesLiveListenerStateUnchanged() throws Exception {
+        // Given a live batch handler whose acknowledgments feed the container state
+        Listeners bean = new Listeners();
+        Method method = Listeners.class.getDeclaredMethod("onLive", List.class, BatchAcknowledgment.class);
+        LocalQueueListener annotation = method.getAnnotation(LocalQueueListener.class);
+        MethodLocalQueueHandler liveHandler = new MethodLocalQueueHandler(bean, method, annotation);
+        List<QueueMessage> liveAcknowledged = new CopyOnWriteArrayList<>();
+        liveHandler.setAcknowledgmentListener((ackedConsumer, messages) -> liveAcknowledged.addAll(messages));
+        registry.register("live", annotation, liveHandler);
+        // the first delivery acknowledges the second message out of order, so it is read again
+        List<QueueMessage> messages = Arrays.asList(message(1, "a"), message(2, "a"));
+        List<QueueMessage> afterEnd = Collections.singletonList(message(3, "a"));
+        when(consumer.batchPoll(anyInt())).thenReturn(messages, messages, afterEnd);
+
+        // When
+        BackfillProgress progress = backfill(5, 1_000).backfillByPosition("live", 1, 2);
+
+        // Then the backfill redelivered and acknowledged on its own consumer only
+        assertTrue(progress.await(5, TimeUnit.SECONDS));
+        assertEquals(1, progress.getCompletedSplits());
+        assertEquals(2, bean.liveDeliveries.get());
+        // once to start the split, once to redeliver the failed message
+        verify(consumer, times(2)).moveToPosition(1L);
+        assertTrue(liveAcknowledged.isEmpty());
+        assertFalse(liveHandler.isRedeliverySkipped(messages.get(1)));
+    }
+
+    private LocalQueueBackfill backfill(long tailIndex, long idleTimeoutMillis) {
+        return new LocalQueueBackfill(registry, new LocalQueueProperties(), consumerId -> {
+            consumerIds.add(consumerId);
+            return consumer;
+        }, () -> tailIndex, idleTimeoutMillis);
+    }
+
+    private static LocalQueueListener annotation(String methodName) throws NoSuchMethodException {
+        return Listeners.class.getDeclaredMethod(methodName, String.class).getAnnotation(LocalQueueListener.class);
+    }
+
+    private static QueueMessage message(long position, String tag) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getPosition()).thenReturn(position);
+        when(message.getTag()).thenReturn(tag);
+        return message;
+    }
+
+    static class Listeners {
+        private final AtomicInteger liveDeliveries = new AtomicInteger();
+
+        @LocalQueueListener(customerId = "all")
+        void onAll(String message) {
+        }
+
+        @LocalQueueListener(customerId = "tagged", selectorTag = "a")
+        void onTagged(String message) {
+        }
+
+        @LocalQueueListener(customerId = "live", ackMode = AckMode.MANUAL, redeliveryBackoff = 0)
+        void onLive(List<QueueMessage> messages, BatchAcknowledgment acknowledgment) {
+            if (liveDeliveries.incrementAndGet() == 1) {
+                acknowledgment.acknowledge(messages.size() - 1);
+            } else {
+                acknowledgment.acknowledge();
+            }
+        }
+    }
+}
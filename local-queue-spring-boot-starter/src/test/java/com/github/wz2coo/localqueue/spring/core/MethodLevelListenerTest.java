@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -59,6 +60,27 @@ class MethodLevelListenerTest {
         assertTrue(registry.getCustomerHandler("test-trigger") instanceof MethodLocalQueueHandler);
     }
 
+    @Test
+    void testDuplicateCustomerIdRejected() {
+        // Given
+        processor.postProcessAfterInitialization(new TestMessageConsumer(), "testConsumer");
+        
+        // When & Then
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> processor.postProcessAfterInitialization(new TestMessageConsumer(), "anotherConsumer"));
+        assertTrue(exception.getMessage().contains("Duplicate"));
+    }
+
+    @Test
+    void testBeanWithoutListenersIgnored() {
+        // When
+        processor.postProcessAfterInitialization(new Object(), "plainBean");
+        processor.postProcessAfterInitialization(new Object(), "anotherPlainBean");
+        
+        // Then
+        assertTrue(registry.getCustomerIds().isEmpty());
+    }
+
     @Test
     void testMethodLocalQueueHandlerExecution() throws Exception {
         // Given
@@ -78,6 +100,31 @@ class MethodLevelListenerTest {
         assertEquals("test message", consumer.lastProcessedMessage);
     }
 
+    @Test
+    void testSingleMessageAckedOneByOneWithReusedAcknowledgment() throws Exception {
+        // Given
+        TestMessageConsumer consumer = new TestMessageConsumer();
+        Method method = TestMessageConsumer.class.getMethod("handleSingleMessage", QueueMessage.class);
+        MethodLocalQueueHandler listener = new MethodLocalQueueHandler(consumer, method);
+        SimpleConsumer simpleConsumer = mock(SimpleConsumer.class);
+        List<List<QueueMessage>> ackedBatches = new ArrayList<>();
+        doAnswer(invocation -> ackedBatches.add(new ArrayList<>(invocation.<List<QueueMessage>>getArgument(0))))
+                .when(simpleConsumer).ack(anyList());
+        
+        QueueMessage message1 = mock(QueueMessage.class);
+        when(message1.getContent()).thenReturn("message1");
+        QueueMessage message2 = mock(QueueMessage.class);
+        when(message2.getContent()).thenReturn("message2");
+        
+        // When
+        listener.onMessages(Arrays.asList(message1, message2), simpleConsumer);
+        listener.onMessages(Arrays.asList(message1), simpleConsumer);
+        
+        // Then
+        assertEquals(Arrays.asList(Arrays.asList(message1), Arrays.asList(message2), Arrays.asList(message1)), ackedBatches);
+        assertEquals("message1", consumer.lastProcessedMessage);
+    }
+
     @Test
     void testBatchMethodExecution() throws Exception {
         // Given
@@ -0,0 +1,193 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2coo.localqueue.spring.autoconfigure.LocalQueueProperties;
+import com.github.wz2cool.localqueue.model.message.QueueMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueueFileReclaimerTest {
+
+    @TempDir
+    Path dataDir;
+
+    private LocalQueueProperties.Producer properties;
+    private ConsumerPositionRegistry positionRegistry;
+    private QueueFileReclaimer reclaimer;
+    private File positionDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties = new LocalQueueProperties.Producer();
+        properties.setDataDir(dataDir.toString());
+        positionDir = dataDir.resolve("positions").toFile();
+        positionRegistry = new ConsumerPositionRegistry(null, positionDir);
+        reclaimer = new QueueFileReclaimer(properties, positionRegistry, new DailyCycleIndexReader());
+        long now = System.currentTimeMillis();
+        createCycleFile("20240101.cq4", now - 3_600_000 * 3);
+        createCycleFile("20240102.cq4", now - 3_600_000 * 2);
+        createCycleFile("20240103.cq4", now);
+        Files.write(dataDir.resolve("metadata.cq4t"), new byte[16]);
+    }
+
+    @Test
+    void testReclaimByFileCountWhenConsumersPassed() {
+        // Given
+        properties.setMaxFileCount(1);
+        ack(positionRegistry, "consumer", 3, 5);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(2, deleted);
+        assertFalse(dataDir.resolve("20240101.cq4").toFile().exists());
+        assertFalse(dataDir.resolve("20240102.cq4").toFile().exists());
+        assertTrue(dataDir.resolve("20240103.cq4").toFile().exists());
+        assertTrue(dataDir.resolve("metadata.cq4t").toFile().exists());
+    }
+
+    @Test
+    void testReclaimByTotalBytesStopsAtSlowestConsumer() {
+        // Given
+        properties.setMaxTotalBytes(100);
+        ack(positionRegistry, "fast", 3, 5);
+        ack(positionRegistry, "slow", 2, 7);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(1, deleted);
+        assertFalse(dataDir.resolve("20240101.cq4").toFile().exists());
+        assertTrue(dataDir.resolve("20240102.cq4").toFile().exists());
+    }
+
+    @Test
+    void testFileModifiedTimeDoesNotDecideReclamation() throws IOException {
+        // Given
+        properties.setMaxFileCount(1);
+        ack(positionRegistry, "consumer", 1, 9);
+        createCycleFile("20240101.cq4", 0);
+        createCycleFile("20240102.cq4", 0);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(0, deleted);
+        assertEquals(3, dataDir.toFile().listFiles((dir, name) -> name.endsWith(".cq4")).length);
+    }
+
+    @Test
+    void testPublishedPositionOfOtherProcessBlocksReclamation() {
+        // Given
+        properties.setMaxFileCount(1);
+        ack(positionRegistry, "local", 3, 5);
+        ConsumerPositionRegistry otherProcess = new ConsumerPositionRegistry();
+        ack(otherProcess, "remote", 2, 1);
+        otherProcess.publish(positionDir);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(1, deleted);
+        assertFalse(dataDir.resolve("20240101.cq4").toFile().exists());
+        assertTrue(dataDir.resolve("20240102.cq4").toFile().exists());
+    }
+
+    @Test
+    void testNoReclaimBeforeConsumerAcknowledged() {
+        // Given
+        properties.setMaxFileCount(1);
+        positionRegistry.register("consumer");
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(0, deleted);
+        assertEquals(3, dataDir.toFile().listFiles((dir, name) -> name.endsWith(".cq4")).length);
+    }
+
+    @Test
+    void testNoReclaimWithoutRegisteredConsumers() {
+        // Given
+        properties.setMaxFileCount(1);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(0, deleted);
+        assertEquals(-1, positionRegistry.getMinAckedPosition());
+        assertEquals(3, dataDir.toFile().listFiles((dir, name) -> name.endsWith(".cq4")).length);
+    }
+
+    @Test
+    void testReclaimWithoutRegisteredConsumersWhenEnabled() {
+        // Given
+        properties.setMaxFileCount(1);
+        properties.setReclaimWithoutConsumers(true);
+
+        // When
+        int deleted = reclaimer.reclaim();
+
+        // Then
+        assertEquals(2, deleted);
+        assertTrue(dataDir.resolve("20240103.cq4").toFile().exists());
+    }
+
+    private static void ack(ConsumerPositionRegistry registry, String customerId, long cycle, long sequence) {
+        QueueMessage message = mock(QueueMessage.class);
+        when(message.getPosition()).thenReturn(cycle << 32 | sequence);
+        registry.register(customerId).update(Collections.singletonList(message));
+    }
+
+    private void createCycleFile(String name, long lastModified) throws IOException {
+        File file = Files.write(dataDir.resolve(name), new byte[64]).toFile();
+        assertTrue(file.setLastModified(lastModified));
+    }
+
+    /**
+     * Daily cycles numbered from 2024-01-00, indexes carry the cycle in the upper 32 bits like Chronicle
+     */
+    private static class DailyCycleIndexReader implements QueueIndexReader {
+
+        @Override
+        public long getLastIndex() {
+            return -1;
+        }
+
+        @Override
+        public long getFirstIndex() {
+            return -1;
+        }
+
+        @Override
+        public long countBetween(long fromIndex, long toIndex) {
+            return -1;
+        }
+
+        @Override
+        public long toCycle(long index) {
+            return index >>> 32;
+        }
+
+        @Override
+        public long getFileCycle(String fileName) {
+            return Long.parseLong(fileName.substring(0, fileName.length() - ".cq4".length())) - 20240100;
+        }
+    }
+}
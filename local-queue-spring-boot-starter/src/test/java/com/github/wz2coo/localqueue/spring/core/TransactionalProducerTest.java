@@ -0,0 +1,165 @@
+package com.github.wz2coo.localqueue.spring.core;
+
+import com.github.wz2cool.localqueue.IProducer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TransactionalProducerTest {
+
+    private IProducer delegate;
+    private TransactionalProducer producer;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(IProducer.class);
+        when(delegate.offer(anyString())).thenReturn(true);
+        when(delegate.offer(anyString(), anyString(), anyString())).thenReturn(true);
+        producer = new TransactionalProducer(delegate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testOfferImmediatelyOutsideTransaction() {
+        assertTrue(producer.offer("m1"));
+        verify(delegate, times(1)).offer("m1");
+    }
+
+    @Test
+    void testAppendAfterCommit() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(producer.offer("m1"));
+        assertTrue(producer.offer("tag", "key", "m2"));
+        verifyNoInteractions(delegate);
+
+        // When
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Then
+        verify(delegate, times(1)).offer("m1");
+        verify(delegate, times(1)).offer("tag", "key", "m2");
+        assertNull(TransactionSynchronizationManager.getResource(producer));
+    }
+
+    @Test
+    void testDropOnRollback() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        producer.offer("m1");
+
+        // When
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Then
+        verifyNoInteractions(delegate);
+        assertNull(TransactionSynchronizationManager.getResource(producer));
+    }
+
+    @Test
+    void testOfferOutsideTransactionDoesNotInterleaveWithCommittedGroup() throws Exception {
+        // Given a committed group blocked in the middle of its append
+        CountDownLatch appending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.offer("m1")).thenAnswer(invocation -> {
+            appending.countDown();
+            release.await();
+            return true;
+        });
+        Thread committer = new Thread(() -> {
+            TransactionSynchronizationManager.initSynchronization();
+            producer.offer("m1");
+            producer.offer("m2");
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+            TransactionSynchronizationManager.clearSynchronization();
+        });
+        committer.start();
+        assertTrue(appending.await(1, TimeUnit.SECONDS));
+
+        // When
+        Thread offerer = new Thread(() -> producer.offer("x"));
+        offerer.start();
+        offerer.join(100);
+
+        // Then
+        verify(delegate, never()).offer("x");
+        release.countDown();
+        committer.join(1000);
+        offerer.join(1000);
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).offer("m1");
+        inOrder.verify(delegate).offer("m2");
+        inOrder.verify(delegate).offer("x");
+    }
+
+    @Test
+    void testAppendOfferFromAnotherSynchronizationAfterCommit() {
+        // Given a synchronization offering when the transaction committed
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                producer.offer("nested");
+            }
+        });
+
+        // When
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Then
+        verify(delegate, times(1)).offer("nested");
+        assertNull(TransactionSynchronizationManager.getResource(producer));
+    }
+
+    @Test
+    void testAppendOfferAfterCommittedGroupWasAppended() {
+        // Given a group buffered before another synchronization offers after commit
+        TransactionSynchronizationManager.initSynchronization();
+        producer.offer("m1");
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                producer.offer("nested");
+            }
+        });
+
+        // When
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Then
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).offer("m1");
+        inOrder.verify(delegate).offer("nested");
+    }
+
+    /**
+     * Same order as AbstractPlatformTransactionManager, synchronizations registered during afterCommit
+     * only get afterCompletion
+     */
+    private void complete(int status) {
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+    }
+}
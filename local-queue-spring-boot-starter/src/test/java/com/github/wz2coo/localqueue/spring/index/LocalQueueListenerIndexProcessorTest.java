@@ -0,0 +1,189 @@
+package com.github.wz2coo.localqueue.spring.index;
+
+import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalQueueListenerIndexProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path sourceDir;
+    private Path outputDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sourceDir = Files.createDirectories(tempDir.resolve("src"));
+        outputDir = Files.createDirectories(tempDir.resolve("classes"));
+    }
+
+    @Test
+    void testIndexListenerClasses() throws IOException {
+        // When
+        compile(source("OrderListener", true), source("PlainBean", false));
+
+        // Then
+        assertEquals(Arrays.asList("sample.OrderListener"), readIndex());
+    }
+
+    @Test
+    void testIndexNestedListenerClassByBinaryName() throws IOException {
+        // Given
+        Path file = sourceDir.resolve("Outer.java");
+        Files.write(file, ("package sample;\n"
+                + "import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;\n"
+                + "public class Outer {\n"
+                + "    public static class Inner {\n"
+                + "        @LocalQueueListener(customerId = \"c\")\n"
+                + "        public void onMessage(String message) {}\n"
+                + "    }\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+
+        // When
+        compile(file);
+
+        // Then
+        assertEquals(Arrays.asList("sample.Outer$Inner"), readIndex());
+    }
+
+    @Test
+    void testIncrementalCompilationKeepsPreviousEntries() throws IOException {
+        // Given
+        compile(source("OrderListener", true));
+
+        // When only another class is recompiled
+        compile(source("PaymentListener", true));
+
+        // Then
+        assertEquals(Arrays.asList("sample.OrderListener", "sample.PaymentListener"), readIndex());
+    }
+
+    @Test
+    void testIncrementalCompilationDropsRemovedListeners() throws IOException {
+        // Given
+        compile(source("OrderListener", true), source("PaymentListener", true));
+
+        // When the listener method is removed from a recompiled class
+        compile(source("OrderListener", false));
+
+        // Then
+        assertEquals(Arrays.asList("sample.PaymentListener"), readIndex());
+    }
+
+    @Test
+    void testIncrementalCompilationDropsDeletedClasses() throws IOException {
+        // Given
+        compile(source("OrderListener", true), source("PaymentListener", true));
+        Files.delete(outputDir.resolve("sample").resolve("OrderListener.class"));
+
+        // When
+        compile(source("PaymentListener", true));
+
+        // Then
+        assertEquals(Arrays.asList("sample.PaymentListener"), readIndex());
+    }
+
+    @Test
+    void testLoadIndexFromCompiledOutput() throws Exception {
+        // Given
+        compile(source("OrderListener", true));
+
+        // When
+        LocalQueueListenerIndex index;
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{outputDir.toUri().toURL()}, null)) {
+            index = LocalQueueListenerIndex.load(classLoader);
+        }
+
+        // Then
+        assertNotNull(index);
+        assertTrue(index.getListenerClasses().contains("sample.OrderListener"));
+    }
+
+    @Test
+    void testProcessorIsNotRegisteredAsService() throws IOException {
+        // When
+        Enumeration<URL> registrations = getClass().getClassLoader()
+                .getResources("META-INF/services/javax.annotation.processing.Processor");
+
+        // Then downstream compilations only run the processor when they name it
+        while (registrations.hasMoreElements()) {
+            try (InputStream in = registrations.nextElement().openStream()) {
+                String services = new String(readAll(in), StandardCharsets.UTF_8);
+                assertFalse(services.contains(LocalQueueListenerIndexProcessor.class.getName()));
+            }
+        }
+    }
+
+        private Path source(String className, boolean listener) throws IOException {
+        Path file = sourceDir.resolve(className + ".java");
+        String body = listener
+                ? "    @LocalQueueListener(customerId = \"c\")\n    public void onMessage(String message) {}\n"
+                : "    public void onMessage(String message) {}\n";
+        Files.write(file, ("package sample;\n"
+                + "import com.github.wz2coo.localqueue.spring.annotation.LocalQueueListener;\n"
+                + "public class " + className + " {\n" + body + "}\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void compile(Path... files) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler, "tests require a JDK");
+        // surefire may pass the test classpath through a manifest-only jar, name the needed locations directly
+        String classPath = outputDir + File.pathSeparator + codeSource(LocalQueueListener.class);
+        String[] args = new String[files.length + 8];
+        args[0] = "-d";
+        args[1] = outputDir.toString();
+        args[2] = "-classpath";
+        args[3] = classPath;
+        args[4] = "-processorpath";
+        args[5] = codeSource(LocalQueueListenerIndexProcessor.class);
+        args[6] = "-processor";
+        args[7] = LocalQueueListenerIndexProcessor.class.getName();
+        for (int i = 0; i < files.length; i++) {
+            args[i + 8] = files[i].toString();
+        }
+        assertEquals(0, compiler.run(null, null, null, args));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+        private static String codeSource(Class<?> clazz) {
+        try {
+            return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+        private List<String> readIndex() throws IOException {
+        return Files.readAllLines(outputDir.resolve(LocalQueueListenerIndex.INDEX_LOCATION), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.wz2coo.localqueue.spring.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalQueueListenerIndexTest {
+
+    @Test
+    void testLoadWithoutIndex() throws Exception {
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[0], null)) {
+            assertNull(LocalQueueListenerIndex.load(classLoader));
+        }
+    }
+
+    @Test
+    void testMayDeclareListeners() {
+        // Given
+        LocalQueueListenerIndex index = new LocalQueueListenerIndex(Collections.singleton(BaseListener.class.getName()));
+
+        // Then
+        assertTrue(index.mayDeclareListeners(BaseListener.class));
+        assertTrue(index.mayDeclareListeners(SubListener.class));
+        assertFalse(index.mayDeclareListeners(PlainBean.class));
+    }
+
+    static class BaseListener {
+    }
+
+    static class SubListener extends BaseListener {
+    }
+
+    static class PlainBean {
+    }
+}